@@ -0,0 +1,114 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.jboss.maven.extension.dependency.metainf.generator.EffectivePomGenerator;
+import org.jboss.maven.extension.dependency.metainf.generator.OverridePropertiesGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures generating the META-INF files of a synthetic model: its effective POM, and the properties file of its
+ * applied overrides. The content is streamed to an output which only counts the bytes, so only the generation is
+ * measured. Run with the gc profiler to see the allocations:
+ * java -jar target/benchmarks.jar MetaInfGenerator -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MetaInfGeneratorBenchmark
+{
+    @Param( { "100", "1000", "20000" } )
+    public int dependencyCount;
+
+    private Model model;
+
+    private EffectivePomGenerator effectivePomGenerator;
+
+    private OverridePropertiesGenerator overridePropertiesGenerator;
+
+    @Setup
+    public void setUp()
+    {
+        model = new Model();
+        model.setModelVersion( "4.0.0" );
+        model.setGroupId( "org.bench" );
+        model.setArtifactId( "bench-module" );
+        model.setVersion( "1.0" );
+        model.setBuild( new Build() );
+        model.setDependencyManagement( new DependencyManagement() );
+
+        Map<String, String> overrides = new HashMap<String, String>();
+        for ( int i = 0; i < dependencyCount; i++ )
+        {
+            Dependency dependency = new Dependency();
+            dependency.setGroupId( "org.bench.group" + ( i % 50 ) );
+            dependency.setArtifactId( "artifact-" + i );
+            dependency.setVersion( "2.0" );
+            model.getDependencyManagement().addDependency( dependency );
+            overrides.put( dependency.getGroupId() + ":" + dependency.getArtifactId(), dependency.getVersion() );
+        }
+
+        effectivePomGenerator = new EffectivePomGenerator();
+        overridePropertiesGenerator = new OverridePropertiesGenerator( overrides, "dependency" );
+    }
+
+    @Benchmark
+    public long effectivePom()
+        throws IOException
+    {
+        CountingOutputStream output = new CountingOutputStream();
+        effectivePomGenerator.writeContent( model, output );
+        return output.count;
+    }
+
+    @Benchmark
+    public long overrideProperties()
+        throws IOException
+    {
+        CountingOutputStream output = new CountingOutputStream();
+        overridePropertiesGenerator.writeContent( model, output );
+        return output.count;
+    }
+
+    /**
+     * Output which drops the bytes written to it, and counts them so the generation can't be optimized away
+     */
+    private static class CountingOutputStream
+        extends OutputStream
+    {
+        private long count;
+
+        @Override
+        public void write( int b )
+        {
+            count++;
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len )
+        {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelModifier;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelModifierEngine;
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.DepVersionOverrider;
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.PluginVersionOverrider;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.log.StdoutLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures applying the dependency and the plugin version overrides to a synthetic model, through the modifier engine
+ * like the build does. Half of the dependencies and plugins of the model are managed, and every third one has an
+ * override; overrides beyond the size of the model match nothing, so the dependency overrider adds them to the
+ * dependency management. Each invocation modifies a batch of copies of the model, which are built once and put back
+ * to their original state in place between invocations, without allocating anything which the gc profiler would
+ * count. Run with the gc profiler to see the allocations, and with -bm thrpt for the throughput:
+ * java -jar target/benchmarks.jar ModelModifier -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ModelModifierBenchmark
+{
+    /**
+     * The number of copies of the model modified by each invocation, enough for an invocation to take much longer
+     * than the per-invocation setup
+     */
+    private static final int BATCH_SIZE = 32;
+
+    private static final String VERSION = "1.0";
+
+    @Param( { "100", "1000", "20000" } )
+    public int dependencyCount;
+
+    @Param( { "10", "1000" } )
+    public int overrideCount;
+
+    private Model[] models;
+
+    private int managedDependencyCount;
+
+    private ModelModifierEngine dependencyEngine;
+
+    private ModelModifierEngine pluginEngine;
+
+    @Setup
+    public void setUp()
+        throws MavenExecutionException
+    {
+        // The overriders log a summary of each model at info level
+        Logging.setLogger( new StdoutLogger( Logger.LEVEL_WARN ) );
+
+        Model templateModel = new Model();
+        templateModel.setGroupId( "org.bench" );
+        templateModel.setArtifactId( "bench-module" );
+        templateModel.setVersion( "1.0" );
+        Build build = new Build();
+        build.setDirectory( "target" );
+        build.setPluginManagement( new PluginManagement() );
+        templateModel.setBuild( build );
+        templateModel.setDependencyManagement( new DependencyManagement() );
+
+        for ( int i = 0; i < dependencyCount; i++ )
+        {
+            Dependency dependency = new Dependency();
+            dependency.setGroupId( "org.bench.group" + ( i % 50 ) );
+            dependency.setArtifactId( "artifact-" + i );
+            dependency.setVersion( VERSION );
+
+            Plugin plugin = new Plugin();
+            plugin.setGroupId( "org.bench.plugins" + ( i % 50 ) );
+            plugin.setArtifactId( "plugin-" + i );
+            plugin.setVersion( VERSION );
+
+            if ( i % 2 == 0 )
+            {
+                templateModel.getDependencyManagement().addDependency( dependency );
+                build.getPluginManagement().addPlugin( plugin );
+            }
+            else
+            {
+                templateModel.addDependency( dependency );
+                build.addPlugin( plugin );
+            }
+        }
+        managedDependencyCount = templateModel.getDependencyManagement().getDependencies().size();
+        models = new Model[BATCH_SIZE];
+        for ( int i = 0; i < models.length; i++ )
+        {
+            models[i] = templateModel.clone();
+        }
+
+        Properties userProperties = new Properties();
+        for ( int i = 0; i < overrideCount; i++ )
+        {
+            int index = i * 3;
+            userProperties.setProperty( DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX + "org.bench.group"
+                + ( index % 50 ) + ":artifact-" + index, "2.0" );
+            userProperties.setProperty( PluginVersionOverrider.PLUGIN_VERSION_OVERRIDE_PREFIX + "org.bench.plugins"
+                + ( index % 50 ) + ":plugin-" + index, "2.0" );
+        }
+        VersionPropertyReader properties =
+            new VersionPropertyReader( new Properties(), userProperties,
+                                       DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX,
+                                       PluginVersionOverrider.PLUGIN_VERSION_OVERRIDE_PREFIX );
+
+        ModelModifier dependencyOverrider = new DepVersionOverrider( properties, null );
+        dependencyOverrider.prepare();
+        dependencyEngine = new ModelModifierEngine( Collections.singletonList( dependencyOverrider ) );
+        ModelModifier pluginOverrider = new PluginVersionOverrider( properties, null );
+        pluginOverrider.prepare();
+        pluginEngine = new ModelModifierEngine( Collections.singletonList( pluginOverrider ) );
+    }
+
+    /**
+     * Undo the changes of the overriders: reset the versions, and remove the dependencies added to the dependency
+     * management. Indexed loops, so that no iterator is allocated.
+     */
+    @Setup( Level.Invocation )
+    public void resetModels()
+    {
+        for ( Model model : models )
+        {
+            resetDependencies( model.getDependencies() );
+            List<Dependency> managedDependencies = model.getDependencyManagement().getDependencies();
+            while ( managedDependencies.size() > managedDependencyCount )
+            {
+                managedDependencies.remove( managedDependencies.size() - 1 );
+            }
+            resetDependencies( managedDependencies );
+            resetPlugins( model.getBuild().getPlugins() );
+            resetPlugins( model.getBuild().getPluginManagement().getPlugins() );
+        }
+    }
+
+    private static void resetDependencies( List<Dependency> dependencies )
+    {
+        for ( int i = 0; i < dependencies.size(); i++ )
+        {
+            dependencies.get( i ).setVersion( VERSION );
+        }
+    }
+
+    private static void resetPlugins( List<Plugin> plugins )
+    {
+        for ( int i = 0; i < plugins.size(); i++ )
+        {
+            plugins.get( i ).setVersion( VERSION );
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH_SIZE )
+    public int dependencyOverrides()
+    {
+        int changed = 0;
+        for ( Model model : models )
+        {
+            if ( dependencyEngine.updateModel( model ) )
+            {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation( BATCH_SIZE )
+    public int pluginOverrides()
+    {
+        int changed = 0;
+        for ( Model model : models )
+        {
+            if ( pluginEngine.updateModel( model ) )
+            {
+                changed++;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,111 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Dependency;
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.VersionOverrideInfo;
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.VersionOverrideTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares looking up the override of every dependency of a large model by a concatenated groupId:artifactId key with
+ * the lookup of the override table on the groupId and artifactId. The table lookup is also measured with pattern
+ * overrides which share the groupIds and artifactId prefixes of the dependencies without matching them, so that every
+ * miss walks the pattern index. Run with the gc profiler to compare the allocations:
+ * java -jar target/benchmarks.jar OverrideLookup -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class OverrideLookupBenchmark
+{
+    @Param( { "10000" } )
+    public int dependencyCount;
+
+    @Param( { "3000" } )
+    public int overrideCount;
+
+    @Param( { "0", "100", "3000" } )
+    public int patternCount;
+
+    private List<Dependency> dependencies;
+
+    private Map<String, String> overrideMap;
+
+    private VersionOverrideTable overrideTable;
+
+    @Setup
+    public void setUp()
+    {
+        dependencies = new ArrayList<Dependency>( dependencyCount );
+        for ( int i = 0; i < dependencyCount; i++ )
+        {
+            Dependency dependency = new Dependency();
+            dependency.setGroupId( "org.bench.group" + ( i % 50 ) );
+            dependency.setArtifactId( "artifact-" + i );
+            dependency.setVersion( "1.0" );
+            dependencies.add( dependency );
+        }
+
+        // Every third dependency is overridden, the remaining overrides match nothing
+        overrideMap = new HashMap<String, String>();
+        for ( int i = 0; i < overrideCount; i++ )
+        {
+            int index = i * 3;
+            overrideMap.put( "org.bench.group" + ( index % 50 ) + ":artifact-" + index, "2.0" );
+        }
+
+        // Pairs of patterns which never match, one sharing the artifactId prefix of a dependency and one below its groupId
+        Map<String, String> overridesWithPatterns = new HashMap<String, String>( overrideMap );
+        for ( int i = 0; i < patternCount; i++ )
+        {
+            overridesWithPatterns.put( "org.bench.group" + ( i % 50 ) + ":artifact-" + i + "-*", "3.0" );
+            overridesWithPatterns.put( "org.bench.group" + i + ".*:*", "3.0" );
+        }
+        overrideTable = new VersionOverrideTable( overridesWithPatterns );
+    }
+
+    @Benchmark
+    public void concatenatedKeyLookup( Blackhole blackhole )
+    {
+        for ( Dependency dependency : dependencies )
+        {
+            String groupIdArtifactId = dependency.getGroupId() + ":" + dependency.getArtifactId();
+            if ( overrideMap.containsKey( groupIdArtifactId ) )
+            {
+                blackhole.consume( overrideMap.get( groupIdArtifactId ) );
+            }
+        }
+    }
+
+    @Benchmark
+    public void overrideTableLookup( Blackhole blackhole )
+    {
+        for ( Dependency dependency : dependencies )
+        {
+            VersionOverrideInfo override = overrideTable.get( dependency.getGroupId(), dependency.getArtifactId() );
+            if ( override != null )
+            {
+                blackhole.consume( override.getVersion() );
+            }
+        }
+    }
+}
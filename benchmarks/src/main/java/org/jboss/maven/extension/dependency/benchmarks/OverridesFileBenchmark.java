@@ -0,0 +1,126 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.maven.extension.dependency.util.VersionOverrideFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading a file of version overrides, in properties and CSV form, compared with loading the properties file
+ * with java.util.Properties. Run with the gc profiler to compare the allocations:
+ * java -jar target/benchmarks.jar OverridesFile -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class OverridesFileBenchmark
+{
+    @Param( { "50000" } )
+    public int overrideCount;
+
+    private File propertiesFile;
+
+    private File csvFile;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        propertiesFile = File.createTempFile( "overrides", ".properties" );
+        csvFile = File.createTempFile( "overrides", ".csv" );
+
+        Writer properties = new OutputStreamWriter( new FileOutputStream( propertiesFile ), "UTF-8" );
+        Writer csv = new OutputStreamWriter( new FileOutputStream( csvFile ), "UTF-8" );
+        try
+        {
+            properties.write( "# Synthetic overrides\n" );
+            csv.write( "groupId,artifactId,version\n" );
+            for ( int i = 0; i < overrideCount; i++ )
+            {
+                String groupId = "org.bench.group" + ( i % 500 );
+                String artifactId = "artifact-" + i;
+                String version = "1." + ( i % 20 ) + ".0.Final";
+                properties.write( groupId + ":" + artifactId + "=" + version + "\n" );
+                csv.write( groupId + "," + artifactId + "," + version + "\n" );
+            }
+        }
+        finally
+        {
+            properties.close();
+            csv.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        propertiesFile.delete();
+        csvFile.delete();
+    }
+
+    @Benchmark
+    public Map<String, String> readPropertiesFile()
+        throws IOException
+    {
+        return read( propertiesFile );
+    }
+
+    @Benchmark
+    public Map<String, String> readCsvFile()
+        throws IOException
+    {
+        return read( csvFile );
+    }
+
+    @Benchmark
+    public Properties loadProperties()
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream input = new FileInputStream( propertiesFile );
+        try
+        {
+            properties.load( input );
+        }
+        finally
+        {
+            input.close();
+        }
+        return properties;
+    }
+
+    private Map<String, String> read( File file )
+        throws IOException
+    {
+        Map<String, String> overrides = new HashMap<String, String>();
+        if ( VersionOverrideFileReader.read( file, overrides ) != overrideCount )
+        {
+            throw new IllegalStateException( "Unexpected number of overrides " + overrides.size() );
+        }
+        return overrides;
+    }
+}
@@ -0,0 +1,261 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.building.DefaultModelBuilderFactory;
+import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelBuildingException;
+import org.apache.maven.model.building.ModelBuildingRequest;
+import org.apache.maven.model.building.ModelSource;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.apache.maven.repository.internal.DefaultServiceLocator;
+import org.apache.maven.repository.internal.MavenRepositorySystemSession;
+import org.codehaus.plexus.util.FileUtils;
+import org.jboss.maven.extension.dependency.resolver.RemoteManagement;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanManagementExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.aether.RepositorySystem;
+import org.sonatype.aether.RepositorySystemSession;
+import org.sonatype.aether.repository.LocalRepository;
+import org.sonatype.aether.resolution.ArtifactDescriptorException;
+import org.sonatype.aether.resolution.ArtifactDescriptorRequest;
+import org.sonatype.aether.resolution.ArtifactDescriptorResult;
+import org.sonatype.aether.util.DefaultRepositoryCache;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+/**
+ * Compares the strategies used to get the managed versions of a remote management POM: building its effective model,
+ * the lean extraction, and reading its artifact descriptor, both in a new repository session and in a session which
+ * already read it. The POM imports a BOM with the given number of managed dependencies and inherits plugin management
+ * and properties from a parent, like the BOMs the extension is used with.
+ * <p>
+ * Run with the gc profiler to compare the allocations: java -jar target/benchmarks.jar RemoteManagement -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class RemoteManagementExtractionBenchmark
+{
+    private static final String GROUP_ID = "org.jboss.bench";
+
+    @Param( { "300", "3000" } )
+    public int managedDependencies;
+
+    private File repository;
+
+    private File pomFile;
+
+    private ModelBuilder modelBuilder;
+
+    private RepositorySystem repositorySystem;
+
+    private RepositorySystemSession cachingSession;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        repository = File.createTempFile( "depmgmt-bench", "" );
+        repository.delete();
+        repository.mkdirs();
+
+        StringBuilder parent = new StringBuilder();
+        parent.append( "<properties>\n" );
+        for ( int i = 0; i < 100; i++ )
+        {
+            parent.append( "  <lib" ).append( i ).append( ".version>1." ).append( i ).append( "</lib" ).append( i );
+            parent.append( ".version>\n" );
+        }
+        parent.append( "</properties>\n<build><pluginManagement><plugins>\n" );
+        for ( int i = 0; i < 50; i++ )
+        {
+            parent.append( "<plugin><groupId>org.bench.plugins</groupId><artifactId>plugin" ).append( i );
+            parent.append( "</artifactId><version>2." ).append( i ).append( "</version>" );
+            parent.append( "<configuration><setting>value</setting><nested><a>1</a><b>2</b></nested></configuration>" );
+            parent.append( "<executions><execution><id>run</id><goals><goal>run</goal></goals></execution></executions>" );
+            parent.append( "</plugin>\n" );
+        }
+        parent.append( "</plugins></pluginManagement></build>\n" );
+        writePom( "parent", null, parent.toString() );
+
+        StringBuilder bom = new StringBuilder( "<dependencyManagement><dependencies>\n" );
+        for ( int i = 0; i < managedDependencies; i++ )
+        {
+            bom.append( "<dependency><groupId>org.bench.g" ).append( i % 40 ).append( "</groupId><artifactId>artifact" );
+            bom.append( i ).append( "</artifactId><version>${lib" ).append( i % 100 ).append( ".version}</version>" );
+            bom.append( "<exclusions><exclusion><groupId>commons-logging</groupId><artifactId>commons-logging" );
+            bom.append( "</artifactId></exclusion></exclusions></dependency>\n" );
+        }
+        bom.append( "</dependencies></dependencyManagement>\n" );
+        writePom( "bom", "parent", bom.toString() );
+
+        StringBuilder management = new StringBuilder( "<dependencyManagement><dependencies>\n" );
+        management.append( "<dependency><groupId>" ).append( GROUP_ID );
+        management.append( "</groupId><artifactId>bom</artifactId><version>1</version><type>pom</type>" );
+        management.append( "<scope>import</scope></dependency>\n" );
+        management.append( "</dependencies></dependencyManagement>\n" );
+        pomFile = writePom( "management", "parent", management.toString() );
+
+        modelBuilder = new DefaultModelBuilderFactory().newInstance();
+
+        repositorySystem = new DefaultServiceLocator().getService( RepositorySystem.class );
+        MavenRepositorySystemSession session = newRepositorySession();
+        session.setCache( new DefaultRepositoryCache() );
+        cachingSession = session;
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( repository );
+    }
+
+    @Benchmark
+    public Model effectiveModel()
+        throws ModelBuildingException
+    {
+        ModelBuildingRequest request = new DefaultModelBuildingRequest();
+        request.setPomFile( pomFile );
+        request.setModelResolver( new FileModelResolver() );
+        request.setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MAVEN_3_0 );
+        request.setProcessPlugins( false );
+        request.setTwoPhaseBuilding( false );
+        request.setSystemProperties( System.getProperties() );
+        return modelBuilder.build( request ).getEffectiveModel();
+    }
+
+    @Benchmark
+    public RemoteManagement leanExtraction()
+        throws IOException, UnresolvableModelException
+    {
+        LeanManagementExtractor extractor =
+            new LeanManagementExtractor( new FileModelResolver(), null, System.getProperties(), new Properties() );
+        RemoteManagement management =
+            extractor.extract( GROUP_ID + ":management:1", new FileModelSource( pomFile ) );
+        if ( management == null )
+        {
+            throw new IllegalStateException( "The benchmark POM can't be extracted without building its model" );
+        }
+        return management;
+    }
+
+    @Benchmark
+    public ArtifactDescriptorResult artifactDescriptor()
+        throws ArtifactDescriptorException
+    {
+        return readArtifactDescriptor( newRepositorySession() );
+    }
+
+    @Benchmark
+    public ArtifactDescriptorResult cachedArtifactDescriptor()
+        throws ArtifactDescriptorException
+    {
+        return readArtifactDescriptor( cachingSession );
+    }
+
+    private ArtifactDescriptorResult readArtifactDescriptor( RepositorySystemSession session )
+        throws ArtifactDescriptorException
+    {
+        ArtifactDescriptorRequest request = new ArtifactDescriptorRequest();
+        request.setArtifact( new DefaultArtifact( GROUP_ID, "management", "pom", "1" ) );
+        ArtifactDescriptorResult result = repositorySystem.readArtifactDescriptor( session, request );
+        if ( result.getManagedDependencies().size() != managedDependencies )
+        {
+            throw new IllegalStateException( "Unexpected descriptor " + result.getManagedDependencies().size() );
+        }
+        return result;
+    }
+
+    private MavenRepositorySystemSession newRepositorySession()
+    {
+        MavenRepositorySystemSession session = new MavenRepositorySystemSession();
+        session.setOffline( true );
+        session.setLocalRepositoryManager( repositorySystem.newLocalRepositoryManager( new LocalRepository( repository ) ) );
+        return session;
+    }
+
+    private File writePom( String artifactId, String parentArtifactId, String content )
+        throws IOException
+    {
+        File file = getPomFile( GROUP_ID, artifactId, "1" );
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<project>\n<modelVersion>4.0.0</modelVersion>\n" );
+            if ( parentArtifactId != null )
+            {
+                writer.write( "<parent><groupId>" + GROUP_ID + "</groupId><artifactId>" + parentArtifactId
+                    + "</artifactId><version>1</version></parent>\n" );
+            }
+            writer.write( "<groupId>" + GROUP_ID + "</groupId><artifactId>" + artifactId
+                + "</artifactId><version>1</version><packaging>pom</packaging>\n" );
+            writer.write( content );
+            writer.write( "</project>\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+        return file;
+    }
+
+    private File getPomFile( String groupId, String artifactId, String version )
+    {
+        return new File( repository, groupId.replace( '.', '/' ) + '/' + artifactId + '/' + version + '/' + artifactId
+            + '-' + version + ".pom" );
+    }
+
+    /**
+     * Resolves POMs from the synthetic repository
+     */
+    private class FileModelResolver
+        implements ModelResolver
+    {
+        public ModelSource resolveModel( String groupId, String artifactId, String version )
+            throws UnresolvableModelException
+        {
+            File file = getPomFile( groupId, artifactId, version );
+            if ( !file.isFile() )
+            {
+                throw new UnresolvableModelException( "Missing " + file, groupId, artifactId, version );
+            }
+            return new FileModelSource( file );
+        }
+
+        public void addRepository( Repository repository )
+        {
+        }
+
+        public ModelResolver newCopy()
+        {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.jboss.maven.extension.dependency.benchmarks;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.DepVersionOverrider;
+import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.PluginVersionOverrider;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures taking the snapshot of the session properties, which partitions the override properties by prefix, and
+ * getting the overrides of a prefix from the snapshot. The system properties hold the usual JVM properties along with
+ * the overrides. Run with the gc profiler to see the allocations:
+ * java -jar target/benchmarks.jar VersionPropertyReader -prof gc
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class VersionPropertyReaderBenchmark
+{
+    @Param( { "100", "1000", "20000" } )
+    public int overrideCount;
+
+    private Properties systemProperties;
+
+    private Properties userProperties;
+
+    private VersionPropertyReader reader;
+
+    @Setup
+    public void setUp()
+    {
+        systemProperties = new Properties();
+        systemProperties.putAll( System.getProperties() );
+        userProperties = new Properties();
+        for ( int i = 0; i < overrideCount; i++ )
+        {
+            userProperties.setProperty( DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX + "org.bench.group"
+                + ( i % 50 ) + ":artifact-" + i, "2.0" );
+        }
+        userProperties.setProperty( PluginVersionOverrider.PLUGIN_VERSION_OVERRIDE_PREFIX
+            + "org.apache.maven.plugins:maven-compiler-plugin", "3.1" );
+
+        reader = newReader();
+    }
+
+    private VersionPropertyReader newReader()
+    {
+        return new VersionPropertyReader( systemProperties, userProperties,
+                                          DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX,
+                                          PluginVersionOverrider.PLUGIN_VERSION_OVERRIDE_PREFIX );
+    }
+
+    @Benchmark
+    public VersionPropertyReader snapshot()
+    {
+        return newReader();
+    }
+
+    @Benchmark
+    public Map<String, String> getPropertiesByPrefix()
+    {
+        return reader.getPropertiesByPrefix( DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX );
+    }
+}
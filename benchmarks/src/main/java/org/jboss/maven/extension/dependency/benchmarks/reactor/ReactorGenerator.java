@@ -0,0 +1,332 @@
+package org.jboss.maven.extension.dependency.benchmarks.reactor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Generates a synthetic reactor of many modules, along with a repository holding the external parent and the BOMs it
+ * uses, so the extension can be measured on a large build without the network. <br />
+ * The layout of the generated directory:
+ * <ul>
+ * <li>repository/ - a maven repository with the parent of the reactor, the BOM it imports, and a remote BOM with newer
+ * versions to pass to the extension with -DdependencyManagement</li>
+ * <li>reactor/ - the top-level POM and one directory per module. Each module depends on libraries managed by the BOM,
+ * and on the module before it.</li>
+ * <li>overrides.properties - version overrides of some of the libraries, to pass with -DversionOverridesFile</li>
+ * </ul>
+ */
+public class ReactorGenerator
+{
+    static final String GROUP_ID = "org.bench.reactor";
+
+    static final String VERSION = "1.0";
+
+    static final String PARENT_ARTIFACT_ID = "bench-parent";
+
+    static final String BOM_ARTIFACT_ID = "bench-bom";
+
+    static final String REMOTE_BOM_ARTIFACT_ID = "bench-remote-bom";
+
+    /**
+     * The number of groupIds the libraries are spread over
+     */
+    private static final int LIBRARY_GROUP_COUNT = 50;
+
+    /**
+     * The number of plugins managed by the parent
+     */
+    private static final int PLUGIN_COUNT = 20;
+
+    private final int moduleCount;
+
+    private final int dependencyCount;
+
+    private final int libraryCount;
+
+    private final int overrideCount;
+
+    /**
+     * @param moduleCount The number of modules of the reactor
+     * @param dependencyCount The number of libraries each module depends on
+     * @param libraryCount The number of libraries managed by the BOM
+     * @param overrideCount The number of libraries given a version override
+     */
+    public ReactorGenerator( int moduleCount, int dependencyCount, int libraryCount, int overrideCount )
+    {
+        this.moduleCount = moduleCount;
+        this.dependencyCount = Math.min( dependencyCount, libraryCount );
+        this.libraryCount = libraryCount;
+        this.overrideCount = Math.min( overrideCount, libraryCount );
+    }
+
+    /**
+     * Generate the repository, the reactor and the overrides. Existing files are overwritten.
+     * 
+     * @param directory The directory to generate in
+     * @throws IOException If a file can't be written
+     */
+    public void generate( File directory )
+        throws IOException
+    {
+        File repository = new File( directory, "repository" );
+        writeParent( repository );
+        writeBom( repository, BOM_ARTIFACT_ID, "1.0", libraryCount );
+        writeBom( repository, REMOTE_BOM_ARTIFACT_ID, "1.1", libraryCount / 2 );
+
+        File reactor = new File( directory, "reactor" );
+        writeTopLevelPom( reactor );
+        for ( int i = 0; i < moduleCount; i++ )
+        {
+            writeModulePom( new File( reactor, getModuleName( i ) ), i );
+        }
+
+        writeOverrides( new File( directory, "overrides.properties" ) );
+    }
+
+    /**
+     * Write maven settings which mirror every repository to the generated one, so nothing is downloaded from the
+     * network
+     * 
+     * @param file The settings file
+     * @param repositoryUrl The URL the generated repository is served at
+     * @throws IOException If the file can't be written
+     */
+    public static void writeSettings( File file, String repositoryUrl )
+        throws IOException
+    {
+        StringBuilder settings = new StringBuilder();
+        settings.append( "<settings>\n" );
+        settings.append( "  <mirrors>\n" );
+        settings.append( "    <mirror>\n" );
+        settings.append( "      <id>bench-repository</id>\n" );
+        settings.append( "      <mirrorOf>*</mirrorOf>\n" );
+        settings.append( "      <url>" ).append( repositoryUrl ).append( "</url>\n" );
+        settings.append( "    </mirror>\n" );
+        settings.append( "  </mirrors>\n" );
+        settings.append( "</settings>\n" );
+        write( file, settings );
+    }
+
+    private void writeParent( File repository )
+        throws IOException
+    {
+        StringBuilder pom = startPom( null, PARENT_ARTIFACT_ID, "pom" );
+        pom.append( "  <properties>\n" );
+        pom.append( "    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n" );
+        pom.append( "  </properties>\n" );
+        pom.append( "  <build>\n" );
+        pom.append( "    <pluginManagement>\n" );
+        pom.append( "      <plugins>\n" );
+        for ( int i = 0; i < PLUGIN_COUNT; i++ )
+        {
+            pom.append( "        <plugin>\n" );
+            pom.append( "          <groupId>org.bench.plugins</groupId>\n" );
+            pom.append( "          <artifactId>plugin-" ).append( i ).append( "</artifactId>\n" );
+            pom.append( "          <version>1.0</version>\n" );
+            pom.append( "        </plugin>\n" );
+        }
+        pom.append( "      </plugins>\n" );
+        pom.append( "    </pluginManagement>\n" );
+        pom.append( "  </build>\n" );
+        pom.append( "</project>\n" );
+        writeRepositoryFile( getPomFile( repository, PARENT_ARTIFACT_ID ), pom );
+    }
+
+    /**
+     * Write a BOM managing the first libraries, with the parent of the reactor as its own parent
+     */
+    private void writeBom( File repository, String artifactId, String libraryVersion, int managedCount )
+        throws IOException
+    {
+        StringBuilder pom = startPom( PARENT_ARTIFACT_ID, artifactId, "pom" );
+        pom.append( "  <dependencyManagement>\n" );
+        pom.append( "    <dependencies>\n" );
+        for ( int i = 0; i < managedCount; i++ )
+        {
+            appendDependency( pom, "      ", getLibraryGroupId( i ), getLibraryArtifactId( i ), libraryVersion, null );
+        }
+        pom.append( "    </dependencies>\n" );
+        pom.append( "  </dependencyManagement>\n" );
+        pom.append( "</project>\n" );
+        writeRepositoryFile( getPomFile( repository, artifactId ), pom );
+    }
+
+    private void writeTopLevelPom( File reactor )
+        throws IOException
+    {
+        StringBuilder pom = startPom( PARENT_ARTIFACT_ID, "bench-reactor", "pom" );
+        pom.append( "  <modules>\n" );
+        for ( int i = 0; i < moduleCount; i++ )
+        {
+            pom.append( "    <module>" ).append( getModuleName( i ) ).append( "</module>\n" );
+        }
+        pom.append( "  </modules>\n" );
+        pom.append( "  <dependencyManagement>\n" );
+        pom.append( "    <dependencies>\n" );
+        pom.append( "      <dependency>\n" );
+        pom.append( "        <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "        <artifactId>" ).append( BOM_ARTIFACT_ID ).append( "</artifactId>\n" );
+        pom.append( "        <version>" ).append( VERSION ).append( "</version>\n" );
+        pom.append( "        <type>pom</type>\n" );
+        pom.append( "        <scope>import</scope>\n" );
+        pom.append( "      </dependency>\n" );
+        pom.append( "    </dependencies>\n" );
+        pom.append( "  </dependencyManagement>\n" );
+        pom.append( "</project>\n" );
+        write( new File( reactor, "pom.xml" ), pom );
+    }
+
+    /**
+     * Write a module depending on a window of the libraries which shifts with each module, and on the module before it
+     */
+    private void writeModulePom( File moduleDirectory, int index )
+        throws IOException
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        pom.append( "<project>\n" );
+        pom.append( "  <modelVersion>4.0.0</modelVersion>\n" );
+        pom.append( "  <parent>\n" );
+        pom.append( "    <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "    <artifactId>bench-reactor</artifactId>\n" );
+        pom.append( "    <version>" ).append( VERSION ).append( "</version>\n" );
+        pom.append( "  </parent>\n" );
+        pom.append( "  <artifactId>" ).append( getModuleName( index ) ).append( "</artifactId>\n" );
+        pom.append( "  <dependencies>\n" );
+        if ( index > 0 )
+        {
+            appendDependency( pom, "    ", GROUP_ID, getModuleName( index - 1 ), "${project.version}", null );
+        }
+        for ( int i = 0; i < dependencyCount; i++ )
+        {
+            int library = (int) ( ( (long) index * 31 + i ) % libraryCount );
+            appendDependency( pom, "    ", getLibraryGroupId( library ), getLibraryArtifactId( library ), null,
+                              i % 5 == 0 ? "test" : null );
+        }
+        pom.append( "  </dependencies>\n" );
+        pom.append( "</project>\n" );
+        write( new File( moduleDirectory, "pom.xml" ), pom );
+    }
+
+    private void writeOverrides( File file )
+        throws IOException
+    {
+        StringBuilder overrides = new StringBuilder();
+        overrides.append( "# Synthetic overrides of every third library\n" );
+        for ( int i = 0; i < overrideCount; i++ )
+        {
+            int library = ( i * 3 ) % libraryCount;
+            overrides.append( getLibraryGroupId( library ) ).append( ':' ).append( getLibraryArtifactId( library ) );
+            overrides.append( "=2.0\n" );
+        }
+        write( file, overrides );
+    }
+
+    private static StringBuilder startPom( String parentArtifactId, String artifactId, String packaging )
+    {
+        StringBuilder pom = new StringBuilder();
+        pom.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        pom.append( "<project>\n" );
+        pom.append( "  <modelVersion>4.0.0</modelVersion>\n" );
+        if ( parentArtifactId != null )
+        {
+            pom.append( "  <parent>\n" );
+            pom.append( "    <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+            pom.append( "    <artifactId>" ).append( parentArtifactId ).append( "</artifactId>\n" );
+            pom.append( "    <version>" ).append( VERSION ).append( "</version>\n" );
+            pom.append( "  </parent>\n" );
+        }
+        pom.append( "  <groupId>" ).append( GROUP_ID ).append( "</groupId>\n" );
+        pom.append( "  <artifactId>" ).append( artifactId ).append( "</artifactId>\n" );
+        pom.append( "  <version>" ).append( VERSION ).append( "</version>\n" );
+        pom.append( "  <packaging>" ).append( packaging ).append( "</packaging>\n" );
+        return pom;
+    }
+
+    private static void appendDependency( StringBuilder pom, String indent, String groupId, String artifactId,
+                                          String version, String scope )
+    {
+        pom.append( indent ).append( "<dependency>\n" );
+        pom.append( indent ).append( "  <groupId>" ).append( groupId ).append( "</groupId>\n" );
+        pom.append( indent ).append( "  <artifactId>" ).append( artifactId ).append( "</artifactId>\n" );
+        if ( version != null )
+        {
+            pom.append( indent ).append( "  <version>" ).append( version ).append( "</version>\n" );
+        }
+        if ( scope != null )
+        {
+            pom.append( indent ).append( "  <scope>" ).append( scope ).append( "</scope>\n" );
+        }
+        pom.append( indent ).append( "</dependency>\n" );
+    }
+
+    private static String getModuleName( int index )
+    {
+        return "module-" + index;
+    }
+
+    private static String getLibraryGroupId( int library )
+    {
+        return "org.bench.lib" + ( library % LIBRARY_GROUP_COUNT );
+    }
+
+    private static String getLibraryArtifactId( int library )
+    {
+        return "lib-" + library;
+    }
+
+    /**
+     * Get the file of a POM of the reactor's groupId in a repository
+     */
+    private static File getPomFile( File repository, String artifactId )
+    {
+        File directory = new File( repository, GROUP_ID.replace( '.', '/' ) + "/" + artifactId + "/" + VERSION );
+        return new File( directory, artifactId + "-" + VERSION + ".pom" );
+    }
+
+    /**
+     * Write a file of the repository along with its SHA-1 checksum, which maven checks when downloading it
+     */
+    private static void writeRepositoryFile( File file, CharSequence content )
+        throws IOException
+    {
+        write( file, content );
+
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IOException( "SHA-1 is not supported", e );
+        }
+        byte[] hash = digest.digest( content.toString().getBytes( "UTF-8" ) );
+        StringBuilder checksum = new StringBuilder();
+        for ( byte b : hash )
+        {
+            checksum.append( String.format( "%02x", b & 0xff ) );
+        }
+        write( new File( file.getPath() + ".sha1" ), checksum );
+    }
+
+    private static void write( File file, CharSequence content )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            writer.append( content );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.jboss.maven.extension.dependency.benchmarks.reactor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Measures the extension on a synthetic reactor generated by ReactorGenerator, by running the bundled maven 3.0.4 on
+ * it and reading the metrics report of the extension. Each run validates the reactor, so nothing but the projects is
+ * built; the first run starts with an empty local repository. All repositories are mirrored to the generated one,
+ * served as file:// or, with a latency, over HTTP by RepositoryServer, so nothing is downloaded from the network.
+ * <br />
+ * Run from the benchmarks directory, after installing the extension:
+ * java -cp target/benchmarks.jar org.jboss.maven.extension.dependency.benchmarks.reactor.ReactorHarness --modules 2000
+ * <p>
+ * Options, with their defaults:
+ * <ul>
+ * <li>--modules 500 - the number of modules of the reactor</li>
+ * <li>--dependencies 50 - the number of libraries each module depends on</li>
+ * <li>--libraries 2000 - the number of libraries managed by the BOM of the reactor</li>
+ * <li>--overrides 500 - the number of version overrides passed with -DversionOverridesFile</li>
+ * <li>--remote-bom - also pass a remote BOM to the extension with -DdependencyManagement</li>
+ * <li>--latency 0 - the delay in milliseconds of every response of the repository</li>
+ * <li>--runs 5 - the number of maven runs</li>
+ * <li>--maven-home ../src/it/resources/apache-maven-3.0.4 - the maven to run</li>
+ * <li>--work target/reactor-harness - the directory to generate in</li>
+ * </ul>
+ * Arguments after -- are passed on to maven, and MAVEN_OPTS is passed on to it from the environment.
+ */
+public class ReactorHarness
+{
+    private static final Pattern TIMER_PATTERN =
+        Pattern.compile( "\"([^\"]+)\": \\{ \"count\": \\d+, \"totalMillis\": ([0-9.E-]+)" );
+
+    private static final Pattern COUNTER_PATTERN = Pattern.compile( "\"([^\"]+)\": (\\d+)" );
+
+    private int moduleCount = 500;
+
+    private int dependencyCount = 50;
+
+    private int libraryCount = 2000;
+
+    private int overrideCount = 500;
+
+    private boolean remoteBom;
+
+    private long latencyMillis;
+
+    private int runCount = 5;
+
+    private File mavenHome = new File( "../src/it/resources/apache-maven-3.0.4" );
+
+    private File workDirectory = new File( "target/reactor-harness" );
+
+    private final List<String> mavenArguments = new ArrayList<String>();
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        ReactorHarness harness = new ReactorHarness();
+        harness.parseArguments( args );
+        System.exit( harness.run() );
+    }
+
+    private void parseArguments( String[] args )
+    {
+        for ( int i = 0; i < args.length; i++ )
+        {
+            String arg = args[i];
+            if ( "--".equals( arg ) )
+            {
+                mavenArguments.addAll( Arrays.asList( args ).subList( i + 1, args.length ) );
+                return;
+            }
+            else if ( "--remote-bom".equals( arg ) )
+            {
+                remoteBom = true;
+                continue;
+            }
+            else if ( i + 1 >= args.length )
+            {
+                throw new IllegalArgumentException( "Missing value of " + arg );
+            }
+
+            String value = args[++i];
+            if ( "--modules".equals( arg ) )
+            {
+                moduleCount = Integer.parseInt( value );
+            }
+            else if ( "--dependencies".equals( arg ) )
+            {
+                dependencyCount = Integer.parseInt( value );
+            }
+            else if ( "--libraries".equals( arg ) )
+            {
+                libraryCount = Integer.parseInt( value );
+            }
+            else if ( "--overrides".equals( arg ) )
+            {
+                overrideCount = Integer.parseInt( value );
+            }
+            else if ( "--latency".equals( arg ) )
+            {
+                latencyMillis = Long.parseLong( value );
+            }
+            else if ( "--runs".equals( arg ) )
+            {
+                runCount = Integer.parseInt( value );
+            }
+            else if ( "--maven-home".equals( arg ) )
+            {
+                mavenHome = new File( value );
+            }
+            else if ( "--work".equals( arg ) )
+            {
+                workDirectory = new File( value );
+            }
+            else
+            {
+                throw new IllegalArgumentException( "Unknown option " + arg );
+            }
+        }
+    }
+
+    /**
+     * Generate the reactor and run maven on it
+     * 
+     * @return 0 if all the runs succeeded, else 1
+     */
+    private int run()
+        throws IOException, InterruptedException
+    {
+        workDirectory = workDirectory.getAbsoluteFile();
+        mavenHome = mavenHome.getAbsoluteFile();
+        installExtension();
+
+        FileUtils.deleteDirectory( workDirectory );
+        long start = System.currentTimeMillis();
+        new ReactorGenerator( moduleCount, dependencyCount, libraryCount, overrideCount ).generate( workDirectory );
+        System.out.println( "Generated " + moduleCount + " modules with " + dependencyCount + " dependencies each in "
+            + ( System.currentTimeMillis() - start ) + "ms, in " + workDirectory );
+
+        File repository = new File( workDirectory, "repository" );
+        RepositoryServer server = null;
+        String repositoryUrl;
+        if ( latencyMillis > 0 )
+        {
+            server = new RepositoryServer( repository, latencyMillis );
+            repositoryUrl = server.start();
+            System.out.println( "Serving the repository at " + repositoryUrl + " with " + latencyMillis
+                + "ms latency" );
+        }
+        else
+        {
+            repositoryUrl = repository.toURI().toString();
+        }
+        File settings = new File( workDirectory, "settings.xml" );
+        ReactorGenerator.writeSettings( settings, repositoryUrl );
+
+        int failures = 0;
+        try
+        {
+            System.out.println( String.format( Locale.ROOT, "%4s %12s %10s %10s %12s %12s", "run", "maven(ms)",
+                                               "init(ms)", "apr(ms)", "heapUsed(MB)", "heapPeak(MB)" ) );
+            for ( int i = 1; i <= runCount; i++ )
+            {
+                if ( !runMaven( i, settings ) )
+                {
+                    failures++;
+                }
+            }
+        }
+        finally
+        {
+            if ( server != null )
+            {
+                server.stop();
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    /**
+     * Copy the installed extension to target/lib/ext of the project, where the bundled maven loads it from
+     */
+    private void installExtension()
+        throws IOException
+    {
+        File targetDirectory = new File( mavenHome, "../../../../target" ).getCanonicalFile();
+        File[] jars = targetDirectory.listFiles();
+        File extensionJar = null;
+        if ( jars != null )
+        {
+            for ( File jar : jars )
+            {
+                String name = jar.getName();
+                if ( name.startsWith( "maven-dependency-management-extension-" ) && name.endsWith( ".jar" )
+                    && !name.endsWith( "-sources.jar" ) && !name.endsWith( "-javadoc.jar" ) )
+                {
+                    extensionJar = jar;
+                }
+            }
+        }
+        if ( extensionJar == null )
+        {
+            throw new IOException( "No extension jar in " + targetDirectory + ", run mvn install first" );
+        }
+        FileUtils.copyFileToDirectory( extensionJar, new File( targetDirectory, "lib/ext" ) );
+    }
+
+    /**
+     * Run maven once, and print the metrics of the extension
+     * 
+     * @return true iff maven succeeded
+     */
+    private boolean runMaven( int run, File settings )
+        throws IOException, InterruptedException
+    {
+        boolean windows = System.getProperty( "os.name" ).toLowerCase( Locale.ROOT ).contains( "windows" );
+        File reactor = new File( workDirectory, "reactor" );
+        File metricsReport = new File( reactor, "target/depmgmt-metrics.json" );
+        metricsReport.delete();
+
+        List<String> command = new ArrayList<String>();
+        command.add( new File( mavenHome, windows ? "bin/mvn.bat" : "bin/mvn" ).getPath() );
+        command.add( "-B" );
+        command.add( "-s" );
+        command.add( settings.getPath() );
+        command.add( "-Dmaven.repo.local=" + new File( workDirectory, "local-repository" ).getPath() );
+        command.add( "-f" );
+        command.add( new File( reactor, "pom.xml" ).getPath() );
+        command.add( "-DversionOverridesFile=" + new File( workDirectory, "overrides.properties" ).getPath() );
+        if ( remoteBom )
+        {
+            command.add( "-DdependencyManagement=" + ReactorGenerator.GROUP_ID + ":"
+                + ReactorGenerator.REMOTE_BOM_ARTIFACT_ID + ":" + ReactorGenerator.VERSION );
+        }
+        command.add( "-DdepMgmt.metricsReport=true" );
+        command.addAll( mavenArguments );
+        command.add( "validate" );
+
+        File log = new File( workDirectory, "run-" + run + ".log" );
+        ProcessBuilder processBuilder = new ProcessBuilder( command );
+        processBuilder.redirectErrorStream( true );
+        processBuilder.redirectOutput( log );
+
+        long start = System.currentTimeMillis();
+        int exitCode = processBuilder.start().waitFor();
+        long mavenMillis = System.currentTimeMillis() - start;
+
+        if ( exitCode != 0 || !metricsReport.isFile() )
+        {
+            System.out.println( String.format( Locale.ROOT, "%4d failed with exit code %d, see %s", run, exitCode,
+                                               log ) );
+            return false;
+        }
+
+        String metrics = read( metricsReport );
+        System.out.println( String.format( Locale.ROOT, "%4d %12d %10.1f %10.1f %12.1f %12.1f", run, mavenMillis,
+                                           getTimerMillis( metrics, "init" ),
+                                           getTimerMillis( metrics, "afterProjectsRead" ),
+                                           getCounter( metrics, "heapUsedAfterProjectsRead" ) / 1048576.0,
+                                           getCounter( metrics, "heapPeakAfterProjectsRead" ) / 1048576.0 ) );
+        return true;
+    }
+
+    private static double getTimerMillis( String metrics, String name )
+    {
+        Matcher matcher = TIMER_PATTERN.matcher( metrics );
+        while ( matcher.find() )
+        {
+            if ( matcher.group( 1 ).equals( name ) )
+            {
+                return Double.parseDouble( matcher.group( 2 ) );
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static long getCounter( String metrics, String name )
+    {
+        Matcher matcher = COUNTER_PATTERN.matcher( metrics );
+        while ( matcher.find() )
+        {
+            if ( matcher.group( 1 ).equals( name ) )
+            {
+                return Long.parseLong( matcher.group( 2 ) );
+            }
+        }
+        return 0;
+    }
+
+    private static String read( File file )
+        throws IOException
+    {
+        InputStream input = new FileInputStream( file );
+        try
+        {
+            Reader reader = new InputStreamReader( input, "UTF-8" );
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            int count;
+            while ( ( count = reader.read( buffer ) ) != -1 )
+            {
+                content.append( buffer, 0, count );
+            }
+            return content.toString();
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.jboss.maven.extension.dependency.benchmarks.reactor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a repository directory over HTTP on the loopback interface, delaying every response to stand in for a
+ * remote repository. <br />
+ * ex: RepositoryServer server = new RepositoryServer( repository, 50 ); String url = server.start(); ... server.stop();
+ */
+public class RepositoryServer
+{
+    private static final int THREAD_COUNT = 16;
+
+    private final File directory;
+
+    private final long latencyMillis;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * @param directory The root directory of the repository
+     * @param latencyMillis The delay added to every response
+     */
+    public RepositoryServer( File directory, long latencyMillis )
+    {
+        this.directory = directory;
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Start serving on a free port
+     * 
+     * @return The URL of the repository
+     * @throws IOException If the server can't be started
+     */
+    public String start()
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getByName( "127.0.0.1" ), 0 ), 0 );
+        server.createContext( "/", new RepositoryHandler() );
+        executor = Executors.newFixedThreadPool( THREAD_COUNT );
+        server.setExecutor( executor );
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public void stop()
+    {
+        if ( server != null )
+        {
+            server.stop( 0 );
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private class RepositoryHandler
+        implements HttpHandler
+    {
+        @Override
+        public void handle( HttpExchange exchange )
+            throws IOException
+        {
+            try
+            {
+                Thread.sleep( latencyMillis );
+
+                String method = exchange.getRequestMethod();
+                File file = new File( directory, exchange.getRequestURI().getPath() );
+                if ( !file.isFile() || !file.getCanonicalPath().startsWith( directory.getCanonicalPath() ) )
+                {
+                    exchange.sendResponseHeaders( 404, -1 );
+                }
+                else if ( "HEAD".equals( method ) )
+                {
+                    exchange.getResponseHeaders().set( "Content-Length", String.valueOf( file.length() ) );
+                    exchange.sendResponseHeaders( 200, -1 );
+                }
+                else if ( "GET".equals( method ) )
+                {
+                    exchange.sendResponseHeaders( 200, file.length() );
+                    copy( file, exchange.getResponseBody() );
+                }
+                else
+                {
+                    exchange.sendResponseHeaders( 405, -1 );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                exchange.close();
+            }
+        }
+
+        private void copy( File file, OutputStream output )
+            throws IOException
+        {
+            InputStream input = new FileInputStream( file );
+            try
+            {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ( ( count = input.read( buffer ) ) != -1 )
+                {
+                    output.write( buffer, 0, count );
+                }
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+    }
+}
@@ -1,33 +1,48 @@
 package org.jboss.maven.extension.dependency;
 
-import java.io.IOException;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.ModelBuilder;
 import org.apache.maven.project.MavenProject;
-import org.codehaus.plexus.PlexusContainerException;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
-import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.metainf.MetaInfExecutionListener;
 import org.jboss.maven.extension.dependency.metainf.MetaInfWriter;
 import org.jboss.maven.extension.dependency.metainf.generator.EffectivePomGenerator;
+import org.jboss.maven.extension.dependency.metainf.generator.MetaInfGenerator;
 import org.jboss.maven.extension.dependency.modelmodifier.ModelModifier;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelModifierEngine;
 import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.DepVersionOverrider;
 import org.jboss.maven.extension.dependency.modelmodifier.versionoverride.PluginVersionOverrider;
 import org.jboss.maven.extension.dependency.resolver.EffectiveModelBuilder;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
 import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.jboss.maven.extension.dependency.util.metrics.TimerMetric;
+import org.jboss.maven.extension.dependency.util.metrics.TraceRecorder;
+import org.sonatype.aether.RepositorySystem;
 import org.sonatype.aether.impl.ArtifactResolver;
+import org.sonatype.aether.impl.RemoteRepositoryManager;
 
 /**
  * Main executor. Operates at the point defined by superclass as "afterProjectsRead", which is "after all MavenProject
  * instances have been created". This should allow access to the model(s) after they are built, but before they are
- * used.
+ * used. Remote POMs start loading earlier, at "afterSessionStart", while maven is still reading the projects.
  */
 @Component( role = AbstractMavenLifecycleParticipant.class, hint = "modifymodel" )
 public class ModifyModelLifecycleParticipant
@@ -35,77 +50,443 @@ public class ModifyModelLifecycleParticipant
 {
     private static final Logger logger = Logging.getLogger();
 
-    private final List<ModelModifier> buildModifierList = new ArrayList<ModelModifier>();
+    /**
+     * The name of the property which sets the number of threads used to modify the projects' models. Defaults to the
+     * degree of concurrency given to maven with -T. <br />
+     * ex: -DdepMgmt.threads=4
+     */
+    private static final String THREADS_PROPERTY = "depMgmt.threads";
+
+    /**
+     * The name of the property which enables writing the metrics of the extension to target/depmgmt-metrics.json of
+     * the top-level project when the session ends. <br />
+     * ex: -DdepMgmt.metricsReport=true
+     */
+    private static final String METRICS_REPORT_PROPERTY = "depMgmt.metricsReport";
+
+    private static final String METRICS_REPORT_FILE_NAME = "depmgmt-metrics.json";
+
+    /**
+     * The name of the property which enables writing a timeline of the work of the extension, in the trace event format
+     * of Chrome, to the given file when the session ends. A relative path is resolved against the directory maven was
+     * started in. <br />
+     * ex: -DdepMgmt.trace=target/depmgmt-trace.json
+     */
+    private static final String TRACE_PROPERTY = "depMgmt.trace";
+
+    /**
+     * The modifiers of the running sessions. They are created when a session starts, configured by the properties of
+     * that session, and dropped once they have modified its projects.
+     */
+    private final Map<MavenSession, SessionModifiers> sessionModifiers =
+        new WeakHashMap<MavenSession, SessionModifiers>();
+
+    /**
+     * Maven's logger, which the log of the extension is sent to
+     */
+    @Requirement
+    private Logger mavenLogger;
+
+    @Requirement
+    private RepositorySystem repositorySystem;
 
     @Requirement
     private ArtifactResolver resolver;
 
+    @Requirement
+    private RemoteRepositoryManager remoteRepositoryManager;
+
     @Requirement
     private ModelBuilder modelBuilder;
 
-    /**
-     * Load the build modifiers at instantiation time
-     */
     public ModifyModelLifecycleParticipant()
     {
         logger.debug( "New ModifyModelLifecycleParticipant contructed" );
+    }
 
-        buildModifierList.add( new DepVersionOverrider() );
-        buildModifierList.add( new PluginVersionOverrider() );
+    /**
+     * Start loading the remote POMs in the background, so that resolving and building them overlaps with maven reading
+     * the projects.
+     */
+    @Override
+    public void afterSessionStart( MavenSession session )
+        throws MavenExecutionException
+    {
+        Logging.setLogger( mavenLogger );
 
+        SessionModifiers modifiers = new SessionModifiers( session );
+        synchronized ( sessionModifiers )
+        {
+            sessionModifiers.put( session, modifiers );
+        }
+
+        if ( !modifiers.isAnyModifierActive() )
+        {
+            return;
+        }
+
+        resetMetrics( session, modifiers.properties );
+        TimerMetric initTimer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.INIT );
+        long start = initTimer.start();
+
+        initEffectiveModelBuilder( session, modifiers.properties );
+
+        for ( ModelModifier currModifier : modifiers.buildModifierList )
+        {
+            if ( currModifier.isActive() )
+            {
+                currModifier.prefetch();
+            }
+        }
+
+        initTimer.stop( start );
+        TraceRecorder.getInstance().record( "afterSessionStart", "init", start );
     }
 
     @Override
     public void afterProjectsRead( MavenSession session )
         throws MavenExecutionException
     {
+        Logging.setLogger( mavenLogger );
+
+        SessionModifiers modifiers;
+        synchronized ( sessionModifiers )
+        {
+            modifiers = sessionModifiers.remove( session );
+        }
+        boolean sessionStarted = modifiers != null;
+        if ( !sessionStarted )
+        {
+            // afterSessionStart is only called for extensions loaded from lib/ext
+            modifiers = new SessionModifiers( session );
+        }
 
+        // Most builds don't request any overrides, so don't do any setup unless a modifier has work to do
+        if ( !modifiers.isAnyModifierActive() )
+        {
+            logger.debug( "No overrides requested, leaving project models unchanged" );
+            return;
+        }
+
+        if ( !sessionStarted )
+        {
+            resetMetrics( session, modifiers.properties );
+        }
+        TimerMetric timer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.AFTER_PROJECTS_READ );
+        long start = timer.start();
         try
         {
-            EffectiveModelBuilder.init( session, resolver, modelBuilder );
+            modifyProjects( session, modifiers );
+        }
+        finally
+        {
+            timer.stop( start );
+            TraceRecorder.getInstance().record( "afterProjectsRead", "modifier", start );
+            ExtensionMetrics.getInstance().recordHeap( ExtensionMetrics.HEAP_USED_AFTER_PROJECTS_READ,
+                                                       ExtensionMetrics.HEAP_PEAK_AFTER_PROJECTS_READ );
         }
-        catch ( ComponentLookupException e )
+    }
+
+    /**
+     * Clear the metrics and the trace for a new session, and start tracing if requested. The metrics are detailed if
+     * they are looked at, in a report or in the trace.
+     */
+    private static void resetMetrics( MavenSession session, VersionPropertyReader properties )
+    {
+        File traceFile = null;
+        String tracePath = properties.getProperty( TRACE_PROPERTY );
+        if ( tracePath != null && tracePath.length() > 0 )
+        {
+            traceFile = new File( tracePath );
+            if ( !traceFile.isAbsolute() && session.getExecutionRootDirectory() != null )
+            {
+                traceFile = new File( session.getExecutionRootDirectory(), tracePath );
+            }
+        }
+        TraceRecorder.reset( traceFile );
+
+        boolean metricsReport = Boolean.parseBoolean( properties.getProperty( METRICS_REPORT_PROPERTY ) );
+        ExtensionMetrics.reset( metricsReport || traceFile != null );
+    }
+
+    /**
+     * Apply the active modifiers of a session to all its projects
+     */
+    private void modifyProjects( MavenSession session, SessionModifiers modifiers )
+        throws MavenExecutionException
+    {
+        TimerMetric initTimer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.INIT );
+        long initStart = initTimer.start();
+
+        initEffectiveModelBuilder( session, modifiers.properties );
+
+        // Only the active modifiers visit the models, so the others cost nothing
+        List<ModelModifier> activeModifiers = new ArrayList<ModelModifier>();
+        for ( ModelModifier currModifier : modifiers.buildModifierList )
         {
-            logger.fatalError( "EffectiveModelBuilder init could not look up plexus component: " + e );
+            if ( currModifier.isActive() )
+            {
+                currModifier.prepare();
+                activeModifiers.add( currModifier );
+            }
         }
-        catch ( PlexusContainerException e )
+        ModelModifierEngine engine = new ModelModifierEngine( activeModifiers );
+        if ( logger.isDebugEnabled() )
         {
-            logger.fatalError( "EffectiveModelBuilder init produced a plexus container error: " + e );
+            logger.debug( "Visiting " + engine.getElementKinds() + " of each project model" );
         }
+        initTimer.stop( initStart );
 
         // Apply model modifiers to the projects' models
-        for ( MavenProject project : session.getProjects() )
+        List<MavenProject> projects = session.getProjects();
+        int threadCount = Math.min( getThreadCount( session, modifiers.properties ), projects.size() );
+        if ( threadCount <= 1 )
+        {
+            for ( MavenProject project : projects )
+            {
+                modifyProject( engine, project );
+            }
+        }
+        else
+        {
+            modifyProjectsInParallel( engine, projects, threadCount );
+        }
+
+        writeReactorManifest( session, activeModifiers );
+
+        File metricsReport = null;
+        if ( Boolean.parseBoolean( modifiers.properties.getProperty( METRICS_REPORT_PROPERTY ) ) )
+        {
+            String buildDirectory = getTopLevelProject( session ).getBuild().getDirectory();
+            metricsReport = new File( buildDirectory, METRICS_REPORT_FILE_NAME );
+        }
+
+        // The files staged in the build directories have to survive the clean plugin
+        MavenExecutionRequest request = session.getRequest();
+        request.setExecutionListener( new MetaInfExecutionListener( request.getExecutionListener(), metricsReport ) );
+    }
+
+    /**
+     * Write the manifests of the active modifiers to the top-level project
+     * 
+     * @param session The current maven session
+     * @param activeModifiers The modifiers which modified the projects
+     */
+    private static void writeReactorManifest( MavenSession session, List<ModelModifier> activeModifiers )
+    {
+        List<MetaInfGenerator> manifest = new ArrayList<MetaInfGenerator>();
+        for ( ModelModifier currModifier : activeModifiers )
+        {
+            MetaInfGenerator generator = currModifier.getReactorManifest();
+            if ( generator != null )
+            {
+                manifest.add( generator );
+            }
+        }
+
+        MetaInfWriter.writeManifest( getTopLevelProject( session ).getModel(), manifest );
+    }
+
+    /**
+     * Get the top-level project of a session, or the first project of the reactor if the top-level project is not built
+     * 
+     * @param session The current maven session, with at least one project
+     * @return The project
+     */
+    private static MavenProject getTopLevelProject( MavenSession session )
+    {
+        List<MavenProject> projects = session.getProjects();
+        MavenProject topLevelProject = session.getTopLevelProject();
+        if ( topLevelProject == null || !projects.contains( topLevelProject ) )
+        {
+            topLevelProject = projects.get( 0 );
+        }
+        return topLevelProject;
+    }
+
+    private void initEffectiveModelBuilder( MavenSession session, VersionPropertyReader properties )
+    {
+        EffectiveModelBuilder.init( session, properties, repositorySystem, resolver, remoteRepositoryManager,
+                                    modelBuilder );
+    }
+
+    /**
+     * Run the modifiers against the model of a single project, and start writing the informational files in the
+     * background if the model was changed. Modifiers only share read-only state between projects, so this is safe to
+     * call concurrently for different projects.
+     * 
+     * @param engine The engine which applies the active modifiers
+     * @param project The project whose model should be modified
+     */
+    private void modifyProject( ModelModifierEngine engine, MavenProject project )
+    {
+        if ( logger.isDebugEnabled() )
         {
             logger.debug( "Checking project '" + project.getId() + "'" );
+        }
 
-            int modelChangeCount = 0;
-            Model currModel = project.getModel();
+        Model currModel = project.getModel();
 
-            // Run the modifiers against the built model
-            for ( ModelModifier currModifier : buildModifierList )
+        // Run the modifiers against the built model, in a single traversal
+        boolean modelChanged = engine.updateModel( currModel );
+
+        // Iff something changed, then it will be useful to output extra info
+        if ( modelChanged )
+        {
+            logger.debug( "Model changed at least once, writing informational files" );
+            MetaInfWriter.addResource( currModel, new EffectivePomGenerator() );
+        }
+
+        // Write the informational files in the background, and drop the ones staged by an earlier build
+        MetaInfWriter.writeStagedResources( currModel );
+    }
+
+    /**
+     * Fan the projects out over a fixed size worker pool. Each project is handled entirely by one worker, and the
+     * results are collected in reactor order so that failures are reported deterministically.
+     * 
+     * @param engine The engine which applies the active modifiers
+     * @param projects The projects to modify
+     * @param threadCount The number of workers to use
+     * @throws MavenExecutionException If modifying any of the projects failed unexpectedly
+     */
+    private void modifyProjectsInParallel( final ModelModifierEngine engine, List<MavenProject> projects,
+                                           int threadCount )
+        throws MavenExecutionException
+    {
+        logger.debug( "Modifying " + projects.size() + " projects using " + threadCount + " threads" );
+
+        ExecutorService executor = Executors.newFixedThreadPool( threadCount );
+        try
+        {
+            List<Future<?>> results = new ArrayList<Future<?>>( projects.size() );
+            for ( final MavenProject project : projects )
             {
-                boolean modelChanged = currModifier.updateModel( currModel );
-                if ( modelChanged )
+                results.add( executor.submit( new Callable<Void>()
                 {
-                    modelChangeCount++;
-                }
+                    @Override
+                    public Void call()
+                    {
+                        modifyProject( engine, project );
+                        return null;
+                    }
+                } ) );
             }
 
-            // Iff something changed, then it will be useful to output extra info
-            if ( modelChangeCount >= 1 )
+            for ( int i = 0; i < results.size(); i++ )
             {
-                logger.debug( "Model changed at least once, writing informational files" );
                 try
                 {
-                    MetaInfWriter.writeResource( currModel, new EffectivePomGenerator() );
+                    results.get( i ).get();
+                }
+                catch ( ExecutionException e )
+                {
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new MavenExecutionException( "Could not modify the model of project '"
+                        + projects.get( i ).getId() + "'", cause );
                 }
-                catch ( IOException e )
+                catch ( InterruptedException e )
                 {
-                    logger.error( "Could not write the effective POM of model '" + currModel.getId() + "' due to " + e );
-                    Logging.logAllCauses( logger, e.getCause() );
+                    Thread.currentThread().interrupt();
+                    throw new MavenExecutionException( "Interrupted while modifying project models", e );
                 }
             }
         }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the number of threads to use when modifying the projects' models. An explicit depMgmt.threads property takes
+     * precedence, otherwise the degree of concurrency maven was started with (-T) is used.
+     * 
+     * @param session The current maven session
+     * @param properties The properties of the session
+     * @return The number of threads, at least 1
+     */
+    private static int getThreadCount( MavenSession session, VersionPropertyReader properties )
+    {
+        String threads = properties.getProperty( THREADS_PROPERTY );
+        if ( threads != null )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( threads.trim() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warn( "Ignoring invalid " + THREADS_PROPERTY + " value '" + threads + "'" );
+            }
+        }
+
+        MavenExecutionRequest request = session.getRequest();
+        if ( request == null || request.getThreadCount() == null )
+        {
+            return 1;
+        }
+
+        try
+        {
+            float degree = Float.parseFloat( request.getThreadCount() );
+            if ( request.isPerCoreThreadCount() )
+            {
+                degree *= Runtime.getRuntime().availableProcessors();
+            }
+            return Math.max( 1, Math.round( degree ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 1;
+        }
+    }
 
+    /**
+     * The build modifiers of a session, sharing a single snapshot of its properties
+     */
+    private static class SessionModifiers
+    {
+        private final VersionPropertyReader properties;
+
+        private final List<ModelModifier> buildModifierList = new ArrayList<ModelModifier>();
+
+        SessionModifiers( MavenSession session )
+        {
+            properties =
+                VersionPropertyReader.fromSession( session, DepVersionOverrider.DEPENDENCY_VERSION_OVERRIDE_PREFIX,
+                                                   PluginVersionOverrider.PLUGIN_VERSION_OVERRIDE_PREFIX );
+
+            // Relative paths of override files are resolved like the path of the trace, against the execution root
+            File executionRoot =
+                session.getExecutionRootDirectory() != null ? new File( session.getExecutionRootDirectory() ) : null;
+            buildModifierList.add( new DepVersionOverrider( properties, executionRoot ) );
+            buildModifierList.add( new PluginVersionOverrider( properties, executionRoot ) );
+        }
+
+        /**
+         * Check whether at least one of the modifiers has something to do in the current build.
+         * 
+         * @return true iff any modifier is active
+         */
+        boolean isAnyModifierActive()
+        {
+            for ( ModelModifier currModifier : buildModifierList )
+            {
+                if ( currModifier.isActive() )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
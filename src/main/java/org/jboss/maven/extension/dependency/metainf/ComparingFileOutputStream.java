@@ -0,0 +1,242 @@
+package org.jboss.maven.extension.dependency.metainf;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stream which replaces the contents of a file only if they change. While the bytes written match the existing file,
+ * they are only compared with it. On the first difference the matching prefix is copied to a temporary file next to
+ * the existing one, the rest of the bytes are written after it, and the temporary file replaces the existing one when
+ * the stream is closed. An unchanged file is never opened for writing, so its modification time is preserved.
+ */
+class ComparingFileOutputStream
+    extends OutputStream
+{
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final File file;
+
+    private final File tempFile;
+
+    /**
+     * The contents of the existing file, while they match the bytes written
+     */
+    private InputStream existing;
+
+    /**
+     * The number of bytes written which matched the existing file
+     */
+    private long matched;
+
+    private byte[] compareBuffer;
+
+    /**
+     * Where the bytes are written once they differ from the existing file, else null
+     */
+    private OutputStream output;
+
+    /**
+     * Whether the bytes are written to the temporary file
+     */
+    private boolean replacing;
+
+    private boolean closed;
+
+    /**
+     * @param file The file to replace. Must not be a directory.
+     * @throws IOException If the file is a directory, or if it can't be opened
+     */
+    ComparingFileOutputStream( File file )
+        throws IOException
+    {
+        if ( file.isDirectory() )
+        {
+            throw new IOException( "File '" + file + "' is a directory" );
+        }
+        this.file = file;
+        this.tempFile = new File( file.getParentFile(), file.getName() + ".tmp" );
+
+        if ( file.isFile() )
+        {
+            existing = new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE );
+        }
+        else
+        {
+            file.getParentFile().mkdirs();
+            output = new FileOutputStream( file );
+        }
+    }
+
+    /**
+     * @return true iff the contents of the file were replaced. Only valid once the stream is closed.
+     */
+    public boolean isChanged()
+    {
+        return existing == null;
+    }
+
+    @Override
+    public void write( int b )
+        throws IOException
+    {
+        write( new byte[] { (byte) b }, 0, 1 );
+    }
+
+    @Override
+    public void write( byte[] bytes, int offset, int length )
+        throws IOException
+    {
+        if ( output == null && !matches( bytes, offset, length ) )
+        {
+            diverge();
+        }
+        if ( output != null )
+        {
+            output.write( bytes, offset, length );
+        }
+        else
+        {
+            matched += length;
+        }
+    }
+
+    /**
+     * Compare bytes with the next bytes of the existing file
+     */
+    private boolean matches( byte[] bytes, int offset, int length )
+        throws IOException
+    {
+        if ( compareBuffer == null )
+        {
+            compareBuffer = new byte[BUFFER_SIZE];
+        }
+        while ( length > 0 )
+        {
+            int read = existing.read( compareBuffer, 0, Math.min( length, compareBuffer.length ) );
+            if ( read < 0 )
+            {
+                return false;
+            }
+            for ( int i = 0; i < read; i++ )
+            {
+                if ( compareBuffer[i] != bytes[offset + i] )
+                {
+                    return false;
+                }
+            }
+            offset += read;
+            length -= read;
+        }
+        return true;
+    }
+
+    /**
+     * Start writing to the temporary file, beginning with the bytes which matched the existing file
+     */
+    private void diverge()
+        throws IOException
+    {
+        existing.close();
+        existing = null;
+
+        output = new FileOutputStream( tempFile );
+        replacing = true;
+        InputStream input = new FileInputStream( file );
+        try
+        {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = matched;
+            while ( remaining > 0 )
+            {
+                int read = input.read( buffer, 0, (int) Math.min( remaining, buffer.length ) );
+                if ( read < 0 )
+                {
+                    throw new IOException( "File '" + file + "' was truncated while it was replaced" );
+                }
+                output.write( buffer, 0, read );
+                remaining -= read;
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    @Override
+    public void flush()
+        throws IOException
+    {
+        if ( output != null )
+        {
+            output.flush();
+        }
+    }
+
+    /**
+     * Finish the file. If the existing file is longer than the bytes written it is replaced as well.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        if ( output == null )
+        {
+            if ( existing.read() < 0 )
+            {
+                existing.close();
+                return;
+            }
+            diverge();
+        }
+        output.close();
+
+        if ( replacing && ( !file.delete() || !tempFile.renameTo( file ) ) )
+        {
+            throw new IOException( "Could not replace file '" + file + "' with '" + tempFile + "'" );
+        }
+    }
+
+    /**
+     * Close the stream without replacing the existing file, after the bytes written turned out to be incomplete. A new
+     * file is deleted, so it doesn't get packaged.
+     */
+    public void discard()
+    {
+        closed = true;
+        try
+        {
+            if ( existing != null )
+            {
+                existing.close();
+            }
+            if ( output != null )
+            {
+                output.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // Nothing to keep, the files are deleted below
+        }
+        if ( replacing )
+        {
+            tempFile.delete();
+        }
+        else if ( output != null )
+        {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.jboss.maven.extension.dependency.metainf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.jboss.maven.extension.dependency.util.metrics.TraceRecorder;
+
+/**
+ * Execution listener which waits for the resources staged by MetaInfWriter in the background before the first mojo of
+ * their project runs, and reports write failures against that project. It restores the resources when the clean plugin
+ * deleted them along with the build directory, at the first mojo of the project after the clean ones, so that a build
+ * which only cleans leaves nothing behind. When the session ends, once all the files are written, it writes the metrics
+ * report and the trace if they were requested. All events are passed on to the listener which was set on the execution
+ * request before.
+ */
+public class MetaInfExecutionListener
+    implements ExecutionListener
+{
+    private static final Logger logger = Logging.getLogger();
+
+    private static final String CLEAN_PLUGIN_ARTIFACT_ID = "maven-clean-plugin";
+
+    private final ExecutionListener delegate;
+
+    private final File metricsReport;
+
+    /**
+     * The ids of the projects which were cleaned, and didn't run another mojo since
+     */
+    private final Set<String> cleanedProjects = Collections.synchronizedSet( new HashSet<String>() );
+
+    /**
+     * @param delegate The listener to pass the events on to, may be null
+     * @param metricsReport The file to write the metrics of the extension to when the session ends, may be null
+     */
+    public MetaInfExecutionListener( ExecutionListener delegate, File metricsReport )
+    {
+        this.delegate = delegate;
+        this.metricsReport = metricsReport;
+    }
+
+    /**
+     * Check whether a mojo may have deleted the build directory
+     */
+    private static boolean isClean( MojoExecution mojoExecution )
+    {
+        if ( mojoExecution == null )
+        {
+            return false;
+        }
+        String phase = mojoExecution.getLifecyclePhase();
+        return CLEAN_PLUGIN_ARTIFACT_ID.equals( mojoExecution.getArtifactId() )
+            || "pre-clean".equals( phase ) || "clean".equals( phase ) || "post-clean".equals( phase );
+    }
+
+    /**
+     * Wait for the background writes of the staged resources of a project, and log their failure
+     */
+    private static void awaitStagedResources( MavenProject project )
+    {
+        try
+        {
+            MetaInfWriter.awaitStagedResources( project.getModel() );
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Could not write the staged files of project '" + project.getId() + "' due to " + e );
+            Logging.logAllCauses( logger, e.getCause() );
+        }
+    }
+
+    /**
+     * Write the staged resources of a project again if they were deleted, and log their failure
+     */
+    private static void restoreStagedResources( MavenProject project )
+    {
+        try
+        {
+            MetaInfWriter.restoreStagedResources( project.getModel() );
+        }
+        catch ( IOException e )
+        {
+            logger.error( "Could not restore the staged files of project '" + project.getId() + "' due to " + e );
+            Logging.logAllCauses( logger, e.getCause() );
+        }
+    }
+
+    @Override
+    public void mojoSucceeded( ExecutionEvent event )
+    {
+        if ( event.getProject() != null && isClean( event.getMojoExecution() ) )
+        {
+            cleanedProjects.add( event.getProject().getId() );
+        }
+
+        if ( delegate != null )
+        {
+            delegate.mojoSucceeded( event );
+        }
+    }
+
+    @Override
+    public void projectDiscoveryStarted( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.projectDiscoveryStarted( event );
+        }
+    }
+
+    @Override
+    public void sessionStarted( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.sessionStarted( event );
+        }
+    }
+
+    @Override
+    public void sessionEnded( ExecutionEvent event )
+    {
+        // Projects which didn't run any mojo still have their files written
+        if ( event.getSession() != null && event.getSession().getProjects() != null )
+        {
+            for ( MavenProject project : event.getSession().getProjects() )
+            {
+                awaitStagedResources( project );
+            }
+        }
+
+        if ( metricsReport != null )
+        {
+            try
+            {
+                ExtensionMetrics.getInstance().writeJson( metricsReport );
+                logger.info( "Wrote the metrics of the extension to " + metricsReport );
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Could not write the metrics of the extension to " + metricsReport + " due to " + e );
+            }
+        }
+
+        TraceRecorder trace = TraceRecorder.getInstance();
+        if ( trace.isEnabled() )
+        {
+            try
+            {
+                trace.writeJson();
+                logger.info( "Wrote the trace of the extension to " + trace.getTraceFile() );
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Could not write the trace of the extension to " + trace.getTraceFile() + " due to "
+                    + e );
+            }
+        }
+
+        if ( delegate != null )
+        {
+            delegate.sessionEnded( event );
+        }
+    }
+
+    @Override
+    public void projectSkipped( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.projectSkipped( event );
+        }
+    }
+
+    @Override
+    public void projectStarted( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.projectStarted( event );
+        }
+    }
+
+    @Override
+    public void projectSucceeded( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.projectSucceeded( event );
+        }
+    }
+
+    @Override
+    public void projectFailed( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.projectFailed( event );
+        }
+    }
+
+    @Override
+    public void mojoSkipped( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.mojoSkipped( event );
+        }
+    }
+
+    @Override
+    public void mojoStarted( ExecutionEvent event )
+    {
+        // The files have to be complete before they are copied, or deleted by the clean plugin
+        MavenProject project = event.getProject();
+        if ( project != null )
+        {
+            if ( !isClean( event.getMojoExecution() ) && cleanedProjects.remove( project.getId() ) )
+            {
+                restoreStagedResources( project );
+            }
+            else
+            {
+                awaitStagedResources( project );
+            }
+        }
+
+        if ( delegate != null )
+        {
+            delegate.mojoStarted( event );
+        }
+    }
+
+    @Override
+    public void mojoFailed( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.mojoFailed( event );
+        }
+    }
+
+    @Override
+    public void forkStarted( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkStarted( event );
+        }
+    }
+
+    @Override
+    public void forkSucceeded( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkSucceeded( event );
+        }
+    }
+
+    @Override
+    public void forkFailed( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkFailed( event );
+        }
+    }
+
+    @Override
+    public void forkedProjectStarted( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkedProjectStarted( event );
+        }
+    }
+
+    @Override
+    public void forkedProjectSucceeded( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkedProjectSucceeded( event );
+        }
+    }
+
+    @Override
+    public void forkedProjectFailed( ExecutionEvent event )
+    {
+        if ( delegate != null )
+        {
+            delegate.forkedProjectFailed( event );
+        }
+    }
+}
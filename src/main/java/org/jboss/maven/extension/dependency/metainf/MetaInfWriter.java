@@ -1,143 +1,598 @@
 package org.jboss.maven.extension.dependency.metainf;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.security.SecureRandom;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Resource;
 import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.FileUtils;
 import org.jboss.maven.extension.dependency.metainf.generator.MetaInfGenerator;
 import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.jboss.maven.extension.dependency.util.metrics.TimerMetric;
+import org.jboss.maven.extension.dependency.util.metrics.TraceRecorder;
 
 /**
  * This class writes out metainf resources to be included with the jar at META-INF/maven/group/project/
+ * <p>
+ * The resources of a model are staged in a single directory under its build directory, which is added to the model's
+ * resources once. The files are streamed from the generators, and files whose content did not change since the previous
+ * build are left untouched, so their timestamps stay the same and the up-to-date checks of resource copying and
+ * packaging still hold. Files which were not staged by the current build are removed, so files from earlier builds are
+ * never packaged.
+ * <p>
+ * The files are written by a small pool of background threads, from a snapshot of the model taken once it is modified,
+ * so that writing them doesn't delay the start of the build. The snapshot is only held by its pending write. The writes
+ * of a module are awaited before its first mojo runs, see MetaInfExecutionListener. The generators of each model are
+ * remembered, so that the files can be generated again from the model when the clean plugin deletes them with the build
+ * directory.
+ * <p>
+ * The reactor-wide manifest records what the modifiers were configured with, once per build rather than in every
+ * module. It is written to a directory of its own in the build directory of the top-level project, and not packaged.
  */
 public class MetaInfWriter
 {
     private static Logger logger = Logging.getLogger();
 
     /**
-     * A unique name to use for a prefix in temp output
+     * The name of the staging directory, under the build directory of the model
      */
-    private static String OUTPUT_DIR_PREFIX = "mvndepext";
+    private static final String STAGING_DIR_NAME = "depmgmt-meta-inf";
 
     /**
-     * Write the POM formatted model to the filesystem, and add it to the model build resources
+     * The name of the directory of the reactor-wide manifest, under the build directory of the top-level project
+     */
+    private static final String MANIFEST_DIR_NAME = "depmgmt-manifest";
+
+    /**
+     * Where the staged resources are included in the build output
+     */
+    private static final String TARGET_PATH = "META-INF/maven";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The writes are mostly I/O, a few threads are enough to keep ahead of the build
+     */
+    private static final int MAX_WRITER_THREADS = 4;
+
+    /**
+     * How long an idle writer thread is kept
+     */
+    private static final long WRITER_KEEP_ALIVE_SECONDS = 10;
+
+    private static final ExecutorService writerPool = createWriterPool();
+
+    /**
+     * The resources staged for each model during this session
+     */
+    private static final Map<Model, StagedResources> stagedResources = new WeakHashMap<Model, StagedResources>();
+
+    /**
+     * Create the pool of writer threads. They are daemon threads which exit when idle, so they never keep the JVM
+     * running, nor linger in an embedding process.
+     */
+    private static ExecutorService createWriterPool()
+    {
+        int threads = Math.max( 1, Math.min( MAX_WRITER_THREADS, Runtime.getRuntime().availableProcessors() ) );
+        ThreadPoolExecutor pool =
+            new ThreadPoolExecutor( threads, threads, WRITER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                    new LinkedBlockingQueue<Runnable>(), new WriterThreadFactory() );
+        pool.allowCoreThreadTimeOut( true );
+        return pool;
+    }
+
+    /**
+     * Get the directory where the resources of a model are staged
      * 
-     * @param model The model to convert to a POM, and to add the POM to
-     * @throws IOException If there is a problem generating or writing the POM
+     * @param model The model
+     * @return The staging directory, in the build directory of the model
      */
-    public static void writeResource( Model model, MetaInfGenerator generator )
-        throws IOException
+    public static File getStagingDirectory( Model model )
     {
-        // Paths
-        String projectArtifactID = model.getArtifactId();
-        String projectGroupID = model.getGroupId();
-        String outputPath = TempDirectory.generateDir( OUTPUT_DIR_PREFIX ).toString();
-        String groupPath = outputPath + File.separator + projectGroupID;
-        String artifactPath = groupPath + File.separator + projectArtifactID;
+        return new File( getBuildDirectory( model ), STAGING_DIR_NAME );
+    }
 
-        // Generator info
-        String desc = generator.getDescription();
-        String fileName = generator.getDescription().replace( " ", "-" );
-        String fileExt = generator.getDesiredFileExtension();
+    /**
+     * Get the directory where the reactor-wide manifest is written
+     * 
+     * @param model The model of the top-level project
+     * @return The manifest directory, in the build directory of the model
+     */
+    public static File getManifestDirectory( Model model )
+    {
+        return new File( getBuildDirectory( model ), MANIFEST_DIR_NAME );
+    }
 
-        // File ref
-        File outputFile = new File( artifactPath + File.separator + fileName + "." + fileExt );
+    private static File getBuildDirectory( Model model )
+    {
+        String buildDirectory = model.getBuild().getDirectory();
+        if ( buildDirectory == null )
+        {
+            return new File( model.getProjectDirectory(), "target" );
+        }
+        return new File( buildDirectory );
+    }
 
-        // Get content
-        String content;
-        try
+    /**
+     * Add a generated file to the model build resources. The file is written when writeStagedResources is called for
+     * the model. A generator of the same file added before for the model is replaced, so modifying a model again
+     * doesn't stage its files twice.
+     * 
+     * @param model The model to generate the file from, and to add the file to
+     * @param generator The generator of the file
+     */
+    public static void addResource( Model model, MetaInfGenerator generator )
+    {
+        synchronized ( stagedResources )
         {
-            content = generator.generateContent( model );
+            List<MetaInfGenerator> generators = getStagedResources( model ).generators;
+            int index = 0;
+            while ( index < generators.size() && !isSameFile( generators.get( index ), generator ) )
+            {
+                index++;
+            }
+            if ( index < generators.size() )
+            {
+                generators.set( index, generator );
+            }
+            else
+            {
+                generators.add( generator );
+            }
         }
-        catch ( IOException e )
+
+        // Add outputPath directory tree to model build resources, once for all the files of the model
+        String outputPath = getStagingDirectory( model ).getPath();
+        if ( !hasResource( model, outputPath ) )
         {
-            throw new IOException( "Couldn't generate " + desc + " from internal model", e );
+            Resource newResource = new Resource();
+            newResource.setDirectory( outputPath );
+            newResource.setTargetPath( TARGET_PATH );
+
+            model.getBuild().addResource( newResource );
         }
 
-        // Write content to file
-        try
+        if ( logger.isDebugEnabled() )
         {
-            writeStringToFile( content, outputFile );
+            logger.debug( generator.getDescription() + " staged and included for '" + model.getGroupId() + ":"
+                + model.getArtifactId() + "'" );
         }
-        catch ( IOException e )
+    }
+
+    /**
+     * Start writing the files added for a model in the background, and removing the files staged for it by an earlier
+     * build which were not added by this one. Must be called once the model is modified, the files are generated from
+     * a snapshot of it taken now, since maven may still change the model while they are written, like resolving the
+     * missing plugin versions. The snapshot is dropped once the files are written.
+     * 
+     * @param model The model
+     */
+    public static void writeStagedResources( Model model )
+    {
+        synchronized ( stagedResources )
         {
-            throw new IOException( "Couldn't write " + desc, e );
+            StagedResources staged = getStagedResources( model );
+            Model snapshot = staged.generators.isEmpty() ? null : model.clone();
+            staged.pending.add( submitStagedFiles( model, snapshot, staged.generators, true ) );
         }
+    }
 
-        // Add outputPath directory tree to model build resources
-        Resource newResource = new Resource();
-        newResource.setDirectory( outputPath );
-        newResource.setTargetPath( "META-INF/maven" );
+    /**
+     * Start writing the reactor-wide manifest in the background, to the manifest directory of the top-level project.
+     * The files of an earlier manifest which are not written again are removed. The writes are awaited along with the
+     * staged resources of the model. The manifest records the configuration of the modifiers rather than the model, so
+     * it is generated from the model itself.
+     * 
+     * @param model The model of the top-level project
+     * @param generators The generators of the manifest files
+     */
+    public static void writeManifest( Model model, List<MetaInfGenerator> generators )
+    {
+        synchronized ( stagedResources )
+        {
+            StagedResources staged = getStagedResources( model );
+            staged.manifestGenerators = new ArrayList<MetaInfGenerator>( generators );
+            staged.pending.add( submitManifest( model, staged.manifestGenerators ) );
+        }
+        logger.debug( "Writing the manifest of " + generators.size() + " files to " + getManifestDirectory( model ) );
+    }
 
-        model.getBuild().addResource( newResource );
+    /**
+     * Wait until the background writes of the files staged for a model, and of the manifest written with it, are done.
+     * A failure is only reported once.
+     * 
+     * @param model The model
+     * @throws IOException If a file could not be written, or a stale file could not be deleted. The first failure is
+     *             thrown once all the writes are done.
+     */
+    public static void awaitStagedResources( Model model )
+        throws IOException
+    {
+        List<Future<?>> pending;
+        synchronized ( stagedResources )
+        {
+            StagedResources staged = stagedResources.get( model );
+            if ( staged == null || staged.pending.isEmpty() )
+            {
+                return;
+            }
+            pending = new ArrayList<Future<?>>( staged.pending );
+            staged.pending.clear();
+        }
 
-        // Done
-        logger.debug( desc + " written and included for '" + projectGroupID + ":" + projectArtifactID + "'" );
+        IOException failure = null;
+        for ( Future<?> write : pending )
+        {
+            try
+            {
+                write.get();
+            }
+            catch ( ExecutionException e )
+            {
+                Throwable cause = e.getCause();
+                if ( cause instanceof RuntimeException )
+                {
+                    throw (RuntimeException) cause;
+                }
+                if ( cause instanceof Error )
+                {
+                    throw (Error) cause;
+                }
+                if ( failure == null )
+                {
+                    failure =
+                        cause instanceof IOException ? (IOException) cause
+                                        : new IOException( "Couldn't write the staged files", cause );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while waiting for the staged files to be written" );
+            }
+        }
+        if ( failure != null )
+        {
+            throw failure;
+        }
     }
 
     /**
-     * Write the entirety of a string to a file, replacing any existing contents.
+     * Write the files staged for a model, and the manifest written with it, again if their directory was deleted. The
+     * files are generated again from the model, and are awaited before returning since the model may change once the
+     * build of its project goes on.
      * 
-     * @param content String to use as the entire contents for the file
-     * @param file File location to write or overwrite. Must not be a directory.
-     * @throws IOException If the file exists and is a directory, or if the file does not exist but cannot be created,
-     *             or cannot be opened for any other reason.
+     * @param model The model
+     * @throws IOException If the earlier writes of the files failed, or the files could not be written again
      */
-    private static void writeStringToFile( String content, File file )
+    public static void restoreStagedResources( Model model )
         throws IOException
     {
-        if ( file.isDirectory() )
+        awaitStagedResources( model );
+
+        synchronized ( stagedResources )
         {
-            throw new IOException( "File '" + file + "' is a directory" );
+            StagedResources staged = stagedResources.get( model );
+            if ( staged == null )
+            {
+                return;
+            }
+
+            if ( !staged.generators.isEmpty() && !getStagingDirectory( model ).exists() )
+            {
+                staged.pending.add( submitStagedFiles( model, model, staged.generators, false ) );
+                logger.debug( "Restoring " + staged.generators.size() + " staged files of '" + model.getGroupId()
+                    + ":" + model.getArtifactId() + "'" );
+            }
+            if ( staged.manifestGenerators != null && !getManifestDirectory( model ).exists() )
+            {
+                staged.pending.add( submitManifest( model, staged.manifestGenerators ) );
+                logger.debug( "Restoring the manifest in " + getManifestDirectory( model ) );
+            }
         }
 
-        File dirname = file.getParentFile();
-        dirname.mkdirs();
+        awaitStagedResources( model );
+    }
 
-        FileWriter writer = null;
-        try
+    /**
+     * Submit the writes of the files staged for a model to the writer pool
+     * 
+     * @param model The model
+     * @param snapshot The model or snapshot to generate the files from, null if there are none
+     * @param generators The generators of the files, copied
+     * @param removeStale Whether to remove the files staged by an earlier build afterwards
+     */
+    private static Future<?> submitStagedFiles( final Model model, final Model snapshot,
+                                                List<MetaInfGenerator> generators, final boolean removeStale )
+    {
+        final List<MetaInfGenerator> stagedGenerators = new ArrayList<MetaInfGenerator>( generators );
+        return writerPool.submit( new Callable<Void>()
         {
-            writer = new FileWriter( file );
-            writer.write( content );
-        }
-        finally
+            @Override
+            public Void call()
+                throws IOException
+            {
+                for ( MetaInfGenerator generator : stagedGenerators )
+                {
+                    writeFile( snapshot, generator, getOutputFile( snapshot, generator ) );
+                }
+                if ( removeStale )
+                {
+                    removeStaleFiles( model, snapshot, stagedGenerators );
+                }
+                return null;
+            }
+        } );
+    }
+
+    /**
+     * Submit the writes of the manifest files to the writer pool, followed by removing the files of an earlier manifest
+     * which are not written again
+     * 
+     * @param model The top-level model
+     * @param generators The generators of the manifest files, not changed afterwards
+     */
+    private static Future<?> submitManifest( final Model model, final List<MetaInfGenerator> generators )
+    {
+        final File manifestDirectory = getManifestDirectory( model );
+        return writerPool.submit( new Callable<Void>()
         {
-            if ( writer != null )
+            @Override
+            public Void call()
+                throws IOException
             {
-                writer.close();
+                Set<File> manifestFiles = new HashSet<File>();
+                for ( MetaInfGenerator generator : generators )
+                {
+                    File manifestFile = new File( manifestDirectory, getFileName( generator ) );
+                    writeFile( model, generator, manifestFile );
+                    manifestFiles.add( manifestFile );
+                }
+                if ( manifestDirectory.exists() )
+                {
+                    removeStaleFiles( manifestDirectory, manifestFiles );
+                }
+                return null;
             }
+        } );
+    }
+
+    /**
+     * Get the resources staged for a model, must be called while holding the lock of stagedResources
+     */
+    private static StagedResources getStagedResources( Model model )
+    {
+        StagedResources staged = stagedResources.get( model );
+        if ( staged == null )
+        {
+            staged = new StagedResources();
+            stagedResources.put( model, staged );
         }
+        return staged;
     }
 
-    private static class TempDirectory
+    /**
+     * Delete the files staged for a model by an earlier build which were not staged again by this one
+     * 
+     * @param model The model
+     * @param snapshot The snapshot the staged files were generated from, null if there are none
+     * @param generators The generators of the staged files
+     * @throws IOException If a stale file or directory can't be deleted
+     */
+    private static void removeStaleFiles( Model model, Model snapshot, List<MetaInfGenerator> generators )
+        throws IOException
     {
-        private static final File tmpdir = new File( System.getProperty( "java.io.tmpdir" ) );
+        File stagingDirectory = getStagingDirectory( model );
+        if ( !stagingDirectory.exists() )
+        {
+            return;
+        }
+
+        if ( generators.isEmpty() )
+        {
+            FileUtils.deleteDirectory( stagingDirectory );
+            logger.debug( "Deleted stale staging directory " + stagingDirectory );
+            return;
+        }
 
-        private static final SecureRandom random = new SecureRandom();
+        Set<File> stagedFiles = new HashSet<File>();
+        for ( MetaInfGenerator generator : generators )
+        {
+            stagedFiles.add( getOutputFile( snapshot, generator ) );
+        }
+        removeStaleFiles( stagingDirectory, stagedFiles );
+    }
 
-        /**
-         * Create a random directory in the temp directory using prefix as the start of the new directory name.
-         * 
-         * @param prefix The start String of the random directory basename
-         * @return File representing the new directory
-         */
-        static File generateDir( String prefix )
+    /**
+     * Delete the files of a directory tree which are not in stagedFiles, and the directories left empty
+     * 
+     * @return true iff the directory is empty afterwards
+     */
+    private static boolean removeStaleFiles( File directory, Set<File> stagedFiles )
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            throw new IOException( "Could not list the files of " + directory );
+        }
+
+        boolean empty = true;
+        for ( File file : files )
         {
-            long suffix = random.nextLong();
-            if ( suffix == Long.MIN_VALUE )
+            if ( file.isDirectory() )
             {
-                // Long.MIN_VALUE will not be changed by Math.abs
-                suffix = 0;
+                if ( removeStaleFiles( file, stagedFiles ) )
+                {
+                    FileUtils.deleteDirectory( file );
+                }
+                else
+                {
+                    empty = false;
+                }
+            }
+            else if ( stagedFiles.contains( file ) )
+            {
+                empty = false;
             }
             else
             {
-                suffix = Math.abs( suffix );
+                FileUtils.forceDelete( file );
+                logger.debug( "Deleted stale staged file " + file );
             }
-            return new File( tmpdir, prefix + String.valueOf( suffix ) );
+        }
+        return empty;
+    }
+
+    /**
+     * Generate a file from a model and stream it to the output file
+     */
+    private static void writeFile( Model model, MetaInfGenerator generator, File outputFile )
+        throws IOException
+    {
+        TimerMetric timer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.META_INF_WRITE );
+        long start = timer.start();
+        try
+        {
+            writeFile( generator, model, outputFile );
+        }
+        finally
+        {
+            timer.stop( start );
+            TraceRecorder.getInstance().record( "writeFile", "metaInf", start, "file", outputFile.getPath() );
+        }
+    }
+
+    private static void writeFile( MetaInfGenerator generator, Model model, File outputFile )
+        throws IOException
+    {
+        String desc = generator.getDescription();
+
+        ComparingFileOutputStream fileOutput;
+        try
+        {
+            fileOutput = new ComparingFileOutputStream( outputFile );
+        }
+        catch ( IOException e )
+        {
+            throw new IOException( "Couldn't write " + desc, e );
+        }
+
+        boolean written = false;
+        try
+        {
+            OutputStream output = new BufferedOutputStream( fileOutput, BUFFER_SIZE );
+            generator.writeContent( model, output );
+            output.close();
+            written = true;
+        }
+        catch ( IOException e )
+        {
+            throw new IOException( "Couldn't generate and write " + desc + " from internal model", e );
+        }
+        finally
+        {
+            if ( !written )
+            {
+                fileOutput.discard();
+            }
+        }
+
+        if ( !fileOutput.isChanged() )
+        {
+            ExtensionMetrics.getInstance().count( ExtensionMetrics.META_INF_FILES_UNCHANGED, 1 );
+            if ( logger.isDebugEnabled() )
+            {
+                logger.debug( "Leaving unchanged file " + outputFile );
+            }
+        }
+    }
+
+    /**
+     * Get the file a generator writes for a model, in the staging directory of the model
+     */
+    private static File getOutputFile( Model model, MetaInfGenerator generator )
+    {
+        File artifactDirectory =
+            new File( new File( getStagingDirectory( model ), model.getGroupId() ), model.getArtifactId() );
+        return new File( artifactDirectory, getFileName( generator ) );
+    }
+
+    private static String getFileName( MetaInfGenerator generator )
+    {
+        return generator.getDescription().replace( " ", "-" ) + "." + generator.getDesiredFileExtension();
+    }
+
+    private static boolean isSameFile( MetaInfGenerator generator, MetaInfGenerator other )
+    {
+        return generator.getDescription().equals( other.getDescription() )
+            && generator.getDesiredFileExtension().equals( other.getDesiredFileExtension() );
+    }
+
+    private static boolean hasResource( Model model, String directory )
+    {
+        for ( Resource resource : model.getBuild().getResources() )
+        {
+            if ( directory.equals( resource.getDirectory() ) && TARGET_PATH.equals( resource.getTargetPath() ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The generators of the files staged for a model, and the state of their background writes
+     */
+    private static class StagedResources
+    {
+        private final List<MetaInfGenerator> generators = new ArrayList<MetaInfGenerator>();
+
+        /**
+         * The generators of the manifest, null unless the model is the top-level one
+         */
+        private List<MetaInfGenerator> manifestGenerators;
+
+        /**
+         * The background writes which were not awaited yet
+         */
+        private final List<Future<?>> pending = new ArrayList<Future<?>>();
+    }
+
+    /**
+     * Creates the daemon threads of the writer pool
+     */
+    private static class WriterThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "depmgmt-meta-inf-writer-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
         }
     }
 }
@@ -1,6 +1,7 @@
 package org.jboss.maven.extension.dependency.metainf.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 import org.apache.maven.model.Model;
 
@@ -8,19 +9,19 @@ public interface MetaInfGenerator
 {
 
     /**
-     * Produce the file content as a single String.
+     * Write the file content to a stream, without closing it.
      * 
      * @param model Model to get information from
-     * @return String of content
-     * @throws IOException If there is a problem encountered when generating the content
+     * @param output Buffered stream to write the content to
+     * @throws IOException If there is a problem encountered when generating or writing the content
      */
-    public String generateContent( Model model )
+    public void writeContent( Model model, OutputStream output )
         throws IOException;
 
     /**
      * Get a String that describes the content generated.
      * 
-     * @return Short descriptive String of the content that is produced by generateContent()
+     * @return Short descriptive String of the content that is produced by writeContent()
      */
     public String getDescription();
 
@@ -1,6 +1,9 @@
 package org.jboss.maven.extension.dependency.metainf.generator;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -20,21 +23,21 @@ public class OverridePropertiesGenerator
     }
 
     @Override
-    public String generateContent( Model model )
+    public void writeContent( Model model, OutputStream output )
         throws IOException
     {
-        StringBuilder content = new StringBuilder();
+        Writer writer = new OutputStreamWriter( output, "UTF-8" );
 
         for ( Entry<String, String> override : overrides.entrySet() )
         {
             // Add a line per entry in the format of key=value\n
-            content.append( override.getKey() );
-            content.append( "=" );
-            content.append( override.getValue() );
-            content.append( "\n" );
+            writer.write( override.getKey() );
+            writer.write( '=' );
+            writer.write( override.getValue() );
+            writer.write( '\n' );
         }
 
-        return content.toString();
+        writer.flush();
     }
 
     @Override
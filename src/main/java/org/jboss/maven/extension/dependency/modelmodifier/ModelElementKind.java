@@ -0,0 +1,58 @@
+package org.jboss.maven.extension.dependency.modelmodifier;
+
+/**
+ * The kinds of model elements which are dispatched to the modifiers while a model is traversed. Modifiers declare the
+ * kinds they need, elements of other kinds are not traversed for them.
+ */
+public enum ModelElementKind
+{
+    /**
+     * A dependency in the dependency management of the model
+     */
+    MANAGED_DEPENDENCY,
+
+    /**
+     * A direct dependency of the model
+     */
+    DEPENDENCY,
+
+    /**
+     * A plugin in the plugin management of the model's build
+     */
+    MANAGED_PLUGIN,
+
+    /**
+     * A plugin of the model's build
+     */
+    PLUGIN,
+
+    /**
+     * A dependency of a managed or build plugin
+     */
+    PLUGIN_DEPENDENCY,
+
+    /**
+     * A dependency in the dependency management of one of the model's profiles
+     */
+    PROFILE_MANAGED_DEPENDENCY,
+
+    /**
+     * A dependency of one of the model's profiles
+     */
+    PROFILE_DEPENDENCY,
+
+    /**
+     * A plugin in the plugin management of one of the model's profiles
+     */
+    PROFILE_MANAGED_PLUGIN,
+
+    /**
+     * A plugin of one of the model's profiles
+     */
+    PROFILE_PLUGIN,
+
+    /**
+     * A dependency of a managed or build plugin of one of the model's profiles
+     */
+    PROFILE_PLUGIN_DEPENDENCY
+}
@@ -1,19 +1,66 @@
 package org.jboss.maven.extension.dependency.modelmodifier;
 
+import java.util.Set;
+
+import org.apache.maven.MavenExecutionException;
 import org.apache.maven.model.Model;
+import org.jboss.maven.extension.dependency.metainf.generator.MetaInfGenerator;
 
 /**
- * Interface for classes that modify a built model in some way
+ * Interface for classes that modify a built model in some way. Models are traversed once by the
+ * ModelModifierEngine, which dispatches their elements to the visitors of all the active modifiers.
  */
 public interface ModelModifier
 {
     /**
-     * Possibly updates a model in some way (may do nothing).
+     * Check whether this modifier has anything to do in the current build. This is called before any models are
+     * modified, so it must be cheap and must not resolve anything.
+     * 
+     * @return true iff the modifier may change a model
+     */
+    public boolean isActive();
+
+    /**
+     * Start slow preparations, like loading remote POMs, in the background. This is called once when the session
+     * starts, before the projects are read, and only if the modifier is active.
+     */
+    public void prefetch();
+
+    /**
+     * Load what this modifier needs to modify the models, like its overrides, waiting for what prefetch() started. This
+     * is called once per session after the projects were read, before any model is modified, and only if the modifier
+     * is active.
+     * 
+     * @throws MavenExecutionException If the configuration of the modifier can't be loaded, which fails the build
+     */
+    public void prepare()
+        throws MavenExecutionException;
+
+    /**
+     * Get the kinds of model elements this modifier needs to visit. Elements of other kinds are not traversed for this
+     * modifier.
+     * 
+     * @return The element kinds, the same set for every model
+     */
+    public Set<ModelElementKind> getElementKinds();
+
+    /**
+     * Start modifying a model. Anything which doesn't depend on the elements of the model, like creating missing
+     * sections, may be done here. The elements are then dispatched to the returned visitor.
      * 
      * @param model the Model to be modified
-     * @return true iff the model changed
+     * @return The visitor for the model's elements, or null if this modifier won't change the model
+     */
+    public ModelVisitor startModel( Model model );
+
+    /**
+     * Get the generator of the reactor-wide manifest of this modifier, which records what it was configured with. The
+     * manifest is written once per build, to the build directory of the top-level project. This is called after the
+     * models were modified, and only if the modifier is active.
+     * 
+     * @return The generator of the manifest, or null if there is nothing to record
      */
-    public boolean updateModel( Model model );
+    public MetaInfGenerator getReactorManifest();
 
     /**
      * Get simple name of this modifier
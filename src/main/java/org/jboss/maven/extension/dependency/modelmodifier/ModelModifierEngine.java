@@ -0,0 +1,286 @@
+package org.jboss.maven.extension.dependency.modelmodifier;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.BuildBase;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.ModelBase;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginManagement;
+import org.apache.maven.model.Profile;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.jboss.maven.extension.dependency.util.metrics.TimerMetric;
+import org.jboss.maven.extension.dependency.util.metrics.TraceRecorder;
+
+/**
+ * Applies a set of modifiers to models, traversing each model only once. The sections of a model are only traversed
+ * when at least one modifier declared the kind of their elements, and each element is only dispatched to the visitors
+ * of the modifiers which declared its kind. The engine keeps no state between models, so it can be used to modify
+ * several models concurrently.
+ * <p>
+ * The time spent on each model is recorded. The time of each modifier is only recorded when the metrics are detailed
+ * or traced, since it has to be taken around every call of its visitor.
+ */
+public class ModelModifierEngine
+{
+    private final List<ModelModifier> modifiers;
+
+    /**
+     * Records the time spent modifying each model
+     */
+    private final TimerMetric modelTimer;
+
+    /**
+     * The timer of each modifier, which records the time spent modifying each model. Null unless the modifiers are
+     * timed separately.
+     */
+    private final TimerMetric[] modifierTimers;
+
+    /**
+     * For each element kind, the indexes of the modifiers which declared it
+     */
+    private final Map<ModelElementKind, int[]> modifiersByKind =
+        new EnumMap<ModelElementKind, int[]>( ModelElementKind.class );
+
+    /**
+     * @param modifiers The modifiers to apply, in the order they are applied
+     */
+    public ModelModifierEngine( List<ModelModifier> modifiers )
+    {
+        this.modifiers = new ArrayList<ModelModifier>( modifiers );
+        ExtensionMetrics metrics = ExtensionMetrics.getInstance();
+        this.modelTimer = metrics.timer( ExtensionMetrics.MODIFY_MODEL );
+        if ( metrics.isDetailed() || TraceRecorder.getInstance().isEnabled() )
+        {
+            this.modifierTimers = new TimerMetric[modifiers.size()];
+            for ( int i = 0; i < modifierTimers.length; i++ )
+            {
+                modifierTimers[i] = metrics.timer( ExtensionMetrics.MODIFIER_PREFIX + modifiers.get( i ).getName() );
+            }
+        }
+        else
+        {
+            this.modifierTimers = null;
+        }
+
+        Map<ModelElementKind, List<Integer>> indexes =
+            new EnumMap<ModelElementKind, List<Integer>>( ModelElementKind.class );
+        for ( int i = 0; i < this.modifiers.size(); i++ )
+        {
+            for ( ModelElementKind kind : this.modifiers.get( i ).getElementKinds() )
+            {
+                List<Integer> kindIndexes = indexes.get( kind );
+                if ( kindIndexes == null )
+                {
+                    kindIndexes = new ArrayList<Integer>();
+                    indexes.put( kind, kindIndexes );
+                }
+                kindIndexes.add( i );
+            }
+        }
+        for ( Map.Entry<ModelElementKind, List<Integer>> entry : indexes.entrySet() )
+        {
+            int[] kindIndexes = new int[entry.getValue().size()];
+            for ( int i = 0; i < kindIndexes.length; i++ )
+            {
+                kindIndexes[i] = entry.getValue().get( i );
+            }
+            modifiersByKind.put( entry.getKey(), kindIndexes );
+        }
+    }
+
+    /**
+     * Get the element kinds declared by at least one of the modifiers
+     * 
+     * @return The element kinds which are traversed
+     */
+    public Set<ModelElementKind> getElementKinds()
+    {
+        Set<ModelElementKind> kinds = EnumSet.noneOf( ModelElementKind.class );
+        kinds.addAll( modifiersByKind.keySet() );
+        return kinds;
+    }
+
+    /**
+     * Apply the modifiers to a model
+     * 
+     * @param model The model to modify
+     * @return true iff at least one of the modifiers changed the model
+     */
+    public boolean updateModel( Model model )
+    {
+        long modelStart = modelTimer.start();
+        ModelVisitor[] visitors = new ModelVisitor[modifiers.size()];
+        boolean anyVisitor = false;
+        for ( int i = 0; i < visitors.length; i++ )
+        {
+            long start = modifierTimers != null ? System.nanoTime() : 0;
+            ModelVisitor visitor = modifiers.get( i ).startModel( model );
+            if ( visitor != null )
+            {
+                visitors[i] =
+                    modifierTimers != null ? new TimedModelVisitor( visitor, modifierTimers[i], System.nanoTime()
+                        - start ) : visitor;
+                anyVisitor = true;
+            }
+        }
+        if ( !anyVisitor )
+        {
+            modelTimer.stop( modelStart );
+            return false;
+        }
+
+        traverse( model, model.getBuild(), visitors, false );
+        if ( hasAnyProfileKind() )
+        {
+            for ( Profile profile : model.getProfiles() )
+            {
+                traverse( profile, profile.getBuild(), visitors, true );
+            }
+        }
+
+        boolean modelChanged = false;
+        for ( ModelVisitor visitor : visitors )
+        {
+            if ( visitor != null && visitor.finishModel() )
+            {
+                modelChanged = true;
+            }
+        }
+        modelTimer.stop( modelStart );
+
+        TraceRecorder trace = TraceRecorder.getInstance();
+        if ( trace.isEnabled() )
+        {
+            trace.record( "updateModel", "modifier", modelStart, getTraceArgs( model, visitors, modelChanged ) );
+        }
+        return modelChanged;
+    }
+
+    /**
+     * Get the arguments of the trace span of a model: its id, whether it changed, and the time of each modifier
+     */
+    private String[] getTraceArgs( Model model, ModelVisitor[] visitors, boolean modelChanged )
+    {
+        List<String> args = new ArrayList<String>();
+        args.add( "model" );
+        args.add( model.getGroupId() + ":" + model.getArtifactId() );
+        args.add( "changed" );
+        args.add( String.valueOf( modelChanged ) );
+        for ( int i = 0; i < visitors.length; i++ )
+        {
+            if ( visitors[i] instanceof TimedModelVisitor )
+            {
+                args.add( modifiers.get( i ).getName() + "Millis" );
+                args.add( String.valueOf( ( (TimedModelVisitor) visitors[i] ).getNanos() / 1000000.0 ) );
+            }
+        }
+        return args.toArray( new String[args.size()] );
+    }
+
+    /**
+     * Traverse the dependencies and plugins of a model or profile
+     */
+    private void traverse( ModelBase base, BuildBase build, ModelVisitor[] visitors, boolean profile )
+    {
+        ModelElementKind managedDependencyKind =
+            profile ? ModelElementKind.PROFILE_MANAGED_DEPENDENCY : ModelElementKind.MANAGED_DEPENDENCY;
+        int[] managedDependencyModifiers = modifiersByKind.get( managedDependencyKind );
+        DependencyManagement dependencyManagement = base.getDependencyManagement();
+        if ( managedDependencyModifiers != null && dependencyManagement != null )
+        {
+            visitDependencies( dependencyManagement.getDependencies(), managedDependencyModifiers, visitors,
+                               managedDependencyKind );
+        }
+
+        ModelElementKind dependencyKind = profile ? ModelElementKind.PROFILE_DEPENDENCY : ModelElementKind.DEPENDENCY;
+        int[] dependencyModifiers = modifiersByKind.get( dependencyKind );
+        if ( dependencyModifiers != null )
+        {
+            visitDependencies( base.getDependencies(), dependencyModifiers, visitors, dependencyKind );
+        }
+
+        if ( build == null )
+        {
+            return;
+        }
+
+        ModelElementKind pluginDependencyKind =
+            profile ? ModelElementKind.PROFILE_PLUGIN_DEPENDENCY : ModelElementKind.PLUGIN_DEPENDENCY;
+        int[] pluginDependencyModifiers = modifiersByKind.get( pluginDependencyKind );
+
+        ModelElementKind managedPluginKind =
+            profile ? ModelElementKind.PROFILE_MANAGED_PLUGIN : ModelElementKind.MANAGED_PLUGIN;
+        int[] managedPluginModifiers = modifiersByKind.get( managedPluginKind );
+        PluginManagement pluginManagement = build.getPluginManagement();
+        if ( ( managedPluginModifiers != null || pluginDependencyModifiers != null ) && pluginManagement != null )
+        {
+            visitPlugins( pluginManagement.getPlugins(), managedPluginModifiers, visitors, managedPluginKind,
+                          pluginDependencyModifiers, pluginDependencyKind );
+        }
+
+        ModelElementKind pluginKind = profile ? ModelElementKind.PROFILE_PLUGIN : ModelElementKind.PLUGIN;
+        int[] pluginModifiers = modifiersByKind.get( pluginKind );
+        if ( pluginModifiers != null || pluginDependencyModifiers != null )
+        {
+            visitPlugins( build.getPlugins(), pluginModifiers, visitors, pluginKind, pluginDependencyModifiers,
+                          pluginDependencyKind );
+        }
+    }
+
+    private static void visitDependencies( List<Dependency> dependencies, int[] modifierIndexes,
+                                           ModelVisitor[] visitors, ModelElementKind kind )
+    {
+        for ( Dependency dependency : dependencies )
+        {
+            for ( int index : modifierIndexes )
+            {
+                ModelVisitor visitor = visitors[index];
+                if ( visitor != null )
+                {
+                    visitor.visitDependency( kind, dependency );
+                }
+            }
+        }
+    }
+
+    private static void visitPlugins( List<Plugin> plugins, int[] modifierIndexes, ModelVisitor[] visitors,
+                                      ModelElementKind kind, int[] dependencyModifierIndexes,
+                                      ModelElementKind dependencyKind )
+    {
+        for ( Plugin plugin : plugins )
+        {
+            if ( modifierIndexes != null )
+            {
+                for ( int index : modifierIndexes )
+                {
+                    ModelVisitor visitor = visitors[index];
+                    if ( visitor != null )
+                    {
+                        visitor.visitPlugin( kind, plugin );
+                    }
+                }
+            }
+            if ( dependencyModifierIndexes != null )
+            {
+                visitDependencies( plugin.getDependencies(), dependencyModifierIndexes, visitors, dependencyKind );
+            }
+        }
+    }
+
+    private boolean hasAnyProfileKind()
+    {
+        return modifiersByKind.containsKey( ModelElementKind.PROFILE_MANAGED_DEPENDENCY )
+            || modifiersByKind.containsKey( ModelElementKind.PROFILE_DEPENDENCY )
+            || modifiersByKind.containsKey( ModelElementKind.PROFILE_MANAGED_PLUGIN )
+            || modifiersByKind.containsKey( ModelElementKind.PROFILE_PLUGIN )
+            || modifiersByKind.containsKey( ModelElementKind.PROFILE_PLUGIN_DEPENDENCY );
+    }
+}
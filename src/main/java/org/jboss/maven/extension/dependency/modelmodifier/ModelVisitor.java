@@ -0,0 +1,34 @@
+package org.jboss.maven.extension.dependency.modelmodifier;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+
+/**
+ * Receives the elements of a single model while it is traversed. A visitor is created by a modifier for each model,
+ * so it may keep state about that model, and only receives the kinds of elements its modifier declared.
+ */
+public interface ModelVisitor
+{
+    /**
+     * Visit a dependency
+     * 
+     * @param kind Where the dependency was found in the model
+     * @param dependency The dependency, may be modified
+     */
+    public void visitDependency( ModelElementKind kind, Dependency dependency );
+
+    /**
+     * Visit a plugin
+     * 
+     * @param kind Where the plugin was found in the model
+     * @param plugin The plugin, may be modified
+     */
+    public void visitPlugin( ModelElementKind kind, Plugin plugin );
+
+    /**
+     * Called once all the elements of the model were visited
+     * 
+     * @return true iff the model changed
+     */
+    public boolean finishModel();
+}
@@ -1,14 +1,29 @@
 package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
+import org.apache.maven.MavenExecutionException;
 import org.apache.maven.model.Model;
+import org.apache.maven.model.building.ModelBuildingException;
 import org.codehaus.plexus.logging.Logger;
 import org.jboss.maven.extension.dependency.metainf.MetaInfWriter;
+import org.jboss.maven.extension.dependency.metainf.generator.MetaInfGenerator;
 import org.jboss.maven.extension.dependency.metainf.generator.OverridePropertiesGenerator;
 import org.jboss.maven.extension.dependency.modelmodifier.ModelModifier;
+import org.jboss.maven.extension.dependency.resolver.EffectiveModelBuilder;
+import org.jboss.maven.extension.dependency.resolver.RemoteManagement;
+import org.jboss.maven.extension.dependency.util.VersionOverrideFileReader;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
 import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
 
 /**
  * Abstract class that provides fields and methods common to classes that need to override versions by groupID and
@@ -33,7 +48,90 @@ public abstract class AbstractVersionOverrider
     protected static final String GAV_SEPERATOR = ":";
 
     /**
-     * Writes String/String override maps to .properties format
+     * The character used to separate the GAVs of several remote POMs
+     */
+    private static final String GAV_LIST_SEPERATOR = ",";
+
+    /**
+     * The name of the property which decides which remote POM wins when several of them manage the same artifact with
+     * different versions. Either "first" (the default, like import scoped POMs) or "last". <br />
+     * ex: -DdepMgmt.remotePrecedence=last
+     */
+    private static final String REMOTE_PRECEDENCE_PROPERTY = "depMgmt.remotePrecedence";
+
+    /**
+     * The properties of the session this overrider was created for
+     */
+    private final VersionPropertyReader properties;
+
+    /**
+     * The directory relative paths of override files are resolved against, or null for the working directory
+     */
+    private final File baseDirectory;
+
+    /**
+     * The overrides of the session. Null until prepare() is called, read-only afterwards so that it can be shared
+     * between models modified in parallel.
+     */
+    private volatile VersionOverrideTable versionOverrides;
+
+    /**
+     * Indexes of the overrides which were applied to any model of the session
+     */
+    private final BitSet reactorAppliedVersionOverrides = new BitSet();
+
+    /**
+     * @param properties The properties of the session the overrider is used in
+     * @param baseDirectory The directory relative paths of override files are resolved against, usually the execution
+     *            root directory of the session. Null for the working directory.
+     */
+    protected AbstractVersionOverrider( VersionPropertyReader properties, File baseDirectory )
+    {
+        this.properties = properties;
+        this.baseDirectory = baseDirectory;
+    }
+
+    protected VersionPropertyReader getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * Build the set of versions which will be used to override local versions. Called once, by prepare().
+     * 
+     * @throws MavenExecutionException If an override file can't be read
+     */
+    protected abstract VersionOverrideTable loadVersionOverrides()
+        throws MavenExecutionException;
+
+    @Override
+    public synchronized void prepare()
+        throws MavenExecutionException
+    {
+        if ( versionOverrides == null )
+        {
+            versionOverrides = loadVersionOverrides();
+        }
+    }
+
+    /**
+     * Get the set of versions which will be used to override local versions
+     * 
+     * @throws IllegalStateException If prepare() wasn't called
+     */
+    protected VersionOverrideTable getVersionOverrides()
+    {
+        VersionOverrideTable table = versionOverrides;
+        if ( table == null )
+        {
+            throw new IllegalStateException( "The " + getName() + " version overrides were not prepared" );
+        }
+        return table;
+    }
+
+    /**
+     * Writes String/String override maps to .properties format. The file is written in the background, so the map
+     * must not change afterwards. Nothing is written for an empty map.
      * 
      * @param model Model whose build to add the written file to
      * @param overrideName Primary part of the written file name
@@ -41,15 +139,286 @@ public abstract class AbstractVersionOverrider
      */
     protected static void writeOverrideMap( Model model, String overrideName, Map<String, String> overrides )
     {
+        if ( overrides.isEmpty() )
+        {
+            return;
+        }
+        MetaInfWriter.addResource( model, new OverridePropertiesGenerator( overrides, overrideName ) );
+    }
+
+    /**
+     * Record the overrides applied to a model, for the metrics. Logs one line for them, in place of a line per altered
+     * element unless debugging.
+     * 
+     * @param model The model the overrides were applied to
+     * @param appliedVersionOverrides The indexes of the applied overrides
+     */
+    protected void recordAppliedOverrides( Model model, BitSet appliedVersionOverrides )
+    {
+        if ( appliedVersionOverrides.isEmpty() )
+        {
+            return;
+        }
+
+        int appliedCount = appliedVersionOverrides.cardinality();
+        ExtensionMetrics.getInstance().count( ExtensionMetrics.OVERRIDES_APPLIED, appliedCount );
+        synchronized ( reactorAppliedVersionOverrides )
+        {
+            reactorAppliedVersionOverrides.or( appliedVersionOverrides );
+        }
+
+        if ( logger.isInfoEnabled() )
+        {
+            logger.info( "Applied " + appliedCount + " " + getName() + " version overrides to '" + model.getGroupId()
+                + ":" + model.getArtifactId() + "'" );
+        }
+    }
+
+    /**
+     * The manifest records all the overrides given to the build, which the modules only record the applied part of.
+     * All the models are modified by now, so the overrides which none of them applied are counted here.
+     */
+    @Override
+    public MetaInfGenerator getReactorManifest()
+    {
+        VersionOverrideTable versionOverrides = getVersionOverrides();
+        if ( versionOverrides.isEmpty() )
+        {
+            return null;
+        }
+
+        int reactorAppliedCount;
+        synchronized ( reactorAppliedVersionOverrides )
+        {
+            reactorAppliedCount = reactorAppliedVersionOverrides.cardinality();
+        }
+        ExtensionMetrics.getInstance().count( ExtensionMetrics.OVERRIDES_UNMATCHED,
+                                              versionOverrides.getOverrideCount() - reactorAppliedCount );
+        return new OverridePropertiesGenerator( versionOverrides.asMap(), getName() );
+    }
+
+    /**
+     * Read the version overrides of the file named by a property, see VersionOverrideFileReader for its format. A
+     * relative path is resolved against the base directory of the overrider.
+     * 
+     * @param overridesFileProperty The name of the property which holds the path of the file
+     * @param versionOverrides Map between GA and version to put the overrides in
+     * @throws MavenExecutionException If the property is set and the file is missing or can't be read
+     */
+    protected void readVersionOverridesFile( String overridesFileProperty, Map<String, String> versionOverrides )
+        throws MavenExecutionException
+    {
+        String overridesPath = properties.getProperty( overridesFileProperty );
+        if ( overridesPath == null )
+        {
+            return;
+        }
+        File overridesFile = new File( overridesPath );
+        if ( !overridesFile.isAbsolute() && baseDirectory != null )
+        {
+            overridesFile = new File( baseDirectory, overridesPath );
+        }
+
+        long start = System.currentTimeMillis();
         try
         {
-            MetaInfWriter.writeResource( model, new OverridePropertiesGenerator(overrides, overrideName) );
+            int count = VersionOverrideFileReader.read( overridesFile, versionOverrides );
+            getLog().debug( "Read " + count + " " + getName() + " version overrides from " + overridesFile + " in "
+                                + ( System.currentTimeMillis() - start ) + "ms" );
         }
         catch ( IOException e )
         {
-            logger.error( "Could not write " + overrideName + " override map to file due to " + e );
-            Logging.logAllCauses( logger, e.getCause() );
+            throw new MavenExecutionException( "Could not read " + getName() + " version overrides from "
+                + overridesFile + " given by -D" + overridesFileProperty + ": " + e.getMessage(), e );
         }
     }
 
+    /**
+     * Select the versions this overrider uses from the management information of a remote POM
+     * 
+     * @param remoteManagement The management information of a remote POM
+     * @return Map between GA and version
+     */
+    protected abstract Map<String, String> getRemoteVersions( RemoteManagement remoteManagement );
+
+    /**
+     * Whether this overrider uses the plugin management of remote POMs. When it doesn't, remote POMs may be loaded with
+     * a cheaper strategy which only gives their dependency management.
+     */
+    protected abstract boolean usesRemotePluginManagement();
+
+    /**
+     * Get version overrides from the remote POMs listed in a property. The POMs are loaded concurrently and their
+     * versions are merged in the order the POMs are listed. Remote POMs which can't be loaded are skipped.
+     * 
+     * @param remotePomProperty The name of the property which holds a comma separated list of GAVs
+     * @return Map between the GA and the version of the artifacts managed by the remote POMs.
+     */
+    protected Map<String, String> loadRemoteVersionOverrides( String remotePomProperty )
+    {
+        List<String> gavs = getRemotePomGavs( remotePomProperty, false );
+        if ( gavs.isEmpty() )
+        {
+            return new HashMap<String, String>( 0 );
+        }
+
+        EffectiveModelBuilder resolver = EffectiveModelBuilder.getInstance();
+        if ( gavs.size() > 1 )
+        {
+            startLoading( resolver, gavs );
+        }
+
+        List<RemoteManagement> remoteManagements = new ArrayList<RemoteManagement>( gavs.size() );
+        for ( String gav : gavs )
+        {
+            try
+            {
+                if ( usesRemotePluginManagement() )
+                {
+                    remoteManagements.add( resolver.getRemoteManagement( gav ) );
+                }
+                else
+                {
+                    remoteManagements.add( resolver.getRemoteDependencyManagement( gav ) );
+                }
+            }
+            catch ( ArtifactResolutionException e )
+            {
+                getLog().warn( "Unable to resolve remote pom: " + e );
+            }
+            catch ( ModelBuildingException e )
+            {
+                getLog().warn( "Unable to resolve remote pom: " + e );
+            }
+        }
+
+        return mergeRemoteVersions( remoteManagements );
+    }
+
+    /**
+     * Start loading the remote POMs listed in a property in the background, so they are ready by the time the models
+     * are modified.
+     * 
+     * @param remotePomProperty The name of the property which holds a comma separated list of GAVs
+     */
+    protected void startLoadingRemotePoms( String remotePomProperty )
+    {
+        List<String> gavs = getRemotePomGavs( remotePomProperty, true );
+        if ( !gavs.isEmpty() )
+        {
+            startLoading( EffectiveModelBuilder.getInstance(), gavs );
+        }
+    }
+
+    private void startLoading( EffectiveModelBuilder resolver, List<String> gavs )
+    {
+        if ( usesRemotePluginManagement() )
+        {
+            resolver.startLoading( gavs );
+        }
+        else
+        {
+            resolver.startLoadingDependencyManagement( gavs );
+        }
+    }
+
+    /**
+     * Get the valid GAVs listed in a property
+     * 
+     * @param remotePomProperty The name of the property which holds a comma separated list of GAVs
+     * @param quiet Whether to skip invalid GAVs without a warning
+     * @return The GAVs in the order they were listed, empty if the property is not set
+     */
+    private List<String> getRemotePomGavs( String remotePomProperty, boolean quiet )
+    {
+        List<String> gavs = new ArrayList<String>();
+
+        String remotePoms = properties.getProperty( remotePomProperty );
+        if ( remotePoms == null )
+        {
+            return gavs;
+        }
+
+        for ( String gav : remotePoms.split( GAV_LIST_SEPERATOR ) )
+        {
+            gav = gav.trim();
+            if ( gav.split( GAV_SEPERATOR ).length != 3 )
+            {
+                if ( !quiet )
+                {
+                    getLog().warn( "Ignoring invalid remote pom GAV '" + gav + "' in " + remotePomProperty );
+                }
+                continue;
+            }
+            gavs.add( gav );
+        }
+        return gavs;
+    }
+
+    /**
+     * Merge the versions of several remote POMs. Artifacts managed with different versions by more than one POM are
+     * reported, the version of the first or last POM wins depending on -DdepMgmt.remotePrecedence.
+     * 
+     * @param remoteManagements The management information of the remote POMs, in the order they were listed
+     * @return Map between GA and the winning version
+     */
+    private Map<String, String> mergeRemoteVersions( List<RemoteManagement> remoteManagements )
+    {
+        if ( remoteManagements.size() == 1 )
+        {
+            return getRemoteVersions( remoteManagements.get( 0 ) );
+        }
+
+        boolean lastWins = "last".equals( properties.getProperty( REMOTE_PRECEDENCE_PROPERTY ) );
+
+        Map<String, String> versions = new HashMap<String, String>();
+        Map<String, String> versionSources = new HashMap<String, String>();
+        int conflictCount = 0;
+
+        for ( RemoteManagement remoteManagement : remoteManagements )
+        {
+            String gav = remoteManagement.getGav();
+            for ( Entry<String, String> remoteVersion : getRemoteVersions( remoteManagement ).entrySet() )
+            {
+                String groupIdArtifactId = remoteVersion.getKey();
+                String version = remoteVersion.getValue();
+
+                String existingVersion = versions.get( groupIdArtifactId );
+                if ( existingVersion == null )
+                {
+                    versions.put( groupIdArtifactId, version );
+                    versionSources.put( groupIdArtifactId, gav );
+                }
+                else if ( !existingVersion.equals( version ) )
+                {
+                    conflictCount++;
+                    String existingSource = versionSources.get( groupIdArtifactId );
+                    if ( lastWins )
+                    {
+                        versions.put( groupIdArtifactId, version );
+                        versionSources.put( groupIdArtifactId, gav );
+                        getLog().info( "Remote " + getName() + " version conflict: " + groupIdArtifactId + "="
+                                           + version + " from " + gav + " overrides " + existingVersion + " from "
+                                           + existingSource );
+                    }
+                    else
+                    {
+                        getLog().info( "Remote " + getName() + " version conflict: " + groupIdArtifactId + "="
+                                           + existingVersion + " from " + existingSource + " overrides " + version
+                                           + " from " + gav );
+                    }
+                }
+            }
+        }
+
+        if ( conflictCount > 0 )
+        {
+            getLog().warn( conflictCount + " remote " + getName() + " version conflicts between "
+                               + remoteManagements.size() + " remote poms, the " + ( lastWins ? "last" : "first" )
+                               + " listed pom wins" );
+        }
+
+        return versions;
+    }
+
 }
@@ -1,18 +1,22 @@
 package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
 
+import java.io.File;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Set;
 
+import org.apache.maven.MavenExecutionException;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.DependencyManagement;
 import org.apache.maven.model.Model;
-import org.apache.maven.model.building.ModelBuildingException;
-import org.jboss.maven.extension.dependency.resolver.EffectiveModelBuilder;
+import org.apache.maven.model.Plugin;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelElementKind;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelVisitor;
+import org.jboss.maven.extension.dependency.resolver.RemoteManagement;
 import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
-import org.sonatype.aether.resolution.ArtifactDescriptorException;
-import org.sonatype.aether.resolution.ArtifactResolutionException;
 
 /**
  * Overrides dependency versions in a model
@@ -21,10 +25,18 @@ public class DepVersionOverrider
     extends AbstractVersionOverrider
 {
     /**
-     * The String that needs to be prepended a system property to make it a version override. <br />
+     * The String that needs to be prepended a property to make it a version override. <br />
      * ex: -Dversion:junit:junit=4.10
      */
-    private static final String DEPENDENCY_VERSION_OVERRIDE_PREFIX = "version:";
+    public static final String DEPENDENCY_VERSION_OVERRIDE_PREFIX = "version:";
+
+    /**
+     * The name of the property which contains the path of a file of dependency version overrides, with one
+     * groupId:artifactId=version or groupId,artifactId,version per line. Overrides given as properties win over the
+     * file. <br />
+     * ex: -DversionOverridesFile=overrides.properties
+     */
+    private static final String DEPENDENCY_VERSION_OVERRIDES_FILE_PROPERTY = "versionOverridesFile";
 
     /**
      * The name of the property that specifies whether or not to add non-matching dependencies <br />
@@ -34,8 +46,8 @@ public class DepVersionOverrider
 
     /**
      * The name of the property which contains the GAV of the remote pom from which to retrieve dependency management
-     * information. <br />
-     * ex: -DdependencyManagement:org.foo:bar-dep-mgmt:1.0
+     * information. Several comma separated GAVs may be given. <br />
+     * ex: -DdependencyManagement=org.foo:bar-dep-mgmt:1.0,org.foo:baz-dep-mgmt:2.0
      */
     private static final String DEPENDENCY_MANAGEMENT_POM_PROPERTY = "dependencyManagement";
 
@@ -45,167 +57,190 @@ public class DepVersionOverrider
     private static final String OVERRIDE_NAME = "dependency";
 
     /**
-     * Cache for override properties. Null until getVersionOverrides() is called.
+     * Whether to add the overrides which didn't match any managed dependency to the dependency management
      */
-    private Map<String, String> dependencyVersionOverrides;
+    private final boolean addNewDeps;
+
+    /**
+     * The dependency overrides are applied to the dependency management and the direct dependencies of the models
+     */
+    private static final Set<ModelElementKind> ELEMENT_KINDS =
+        Collections.unmodifiableSet( EnumSet.of( ModelElementKind.MANAGED_DEPENDENCY, ModelElementKind.DEPENDENCY ) );
+
+    /**
+     * @param properties The properties of the session, which must be partitioned by DEPENDENCY_VERSION_OVERRIDE_PREFIX
+     * @param baseDirectory The directory relative paths of override files are resolved against, null for the working
+     *            directory
+     */
+    public DepVersionOverrider( VersionPropertyReader properties, File baseDirectory )
+    {
+        super( properties, baseDirectory );
+        addNewDeps = !"false".equals( properties.getProperty( ADD_NON_MATCHING ) );
+    }
+
+    @Override
+    public Set<ModelElementKind> getElementKinds()
+    {
+        return ELEMENT_KINDS;
+    }
 
     /**
      * Modify model's dependency management and direct dependencies.
      */
     @Override
-    public boolean updateModel( Model model )
+    public ModelVisitor startModel( Model model )
     {
-        Map<String, String> versionOverrides = getVersionOverrides();
-        if ( versionOverrides.size() == 0 )
+        VersionOverrideTable versionOverrides = getVersionOverrides();
+        if ( versionOverrides.isEmpty() )
         {
-            return false;
+            return null;
         }
 
         // If the model doesn't have any Dependency Management set by default, create one for it
-        DependencyManagement dependencyManagement = model.getDependencyManagement();
-        if ( dependencyManagement == null )
+        if ( model.getDependencyManagement() == null )
         {
-            dependencyManagement = new DependencyManagement();
-            model.setDependencyManagement( dependencyManagement );
+            model.setDependencyManagement( new DependencyManagement() );
             getLog().debug( "Created new Dependency Management for model" );
         }
 
-        // Apply overrides to Dependency Management
-        List<Dependency> dependencies = dependencyManagement.getDependencies();
-        Map<String, String> nonMatchingVersionOverrides = applyOverrides( dependencies, versionOverrides );
-        if ( addNewDeps() )
-        {
-            // Add dependencies to Dependency Management which did not match any existing dependency
-            for ( String groupIdArtifactId : nonMatchingVersionOverrides.keySet() )
-            {
-                String[] groupIdArtifactIdParts = groupIdArtifactId.split( ":" );
+        return new DependencyOverrideVisitor( model, versionOverrides );
+    }
 
-                Dependency newDependency = new Dependency();
-                newDependency.setGroupId( groupIdArtifactIdParts[0] );
-                newDependency.setArtifactId( groupIdArtifactIdParts[1] );
+    @Override
+    public boolean isActive()
+    {
+        return getProperties().getProperty( DEPENDENCY_MANAGEMENT_POM_PROPERTY ) != null
+            || getProperties().getProperty( DEPENDENCY_VERSION_OVERRIDES_FILE_PROPERTY ) != null
+            || getProperties().hasPropertyWithPrefix( DEPENDENCY_VERSION_OVERRIDE_PREFIX );
+    }
 
-                String artifactVersion = nonMatchingVersionOverrides.get( groupIdArtifactId );
-                newDependency.setVersion( artifactVersion );
+    @Override
+    public void prefetch()
+    {
+        startLoadingRemotePoms( DEPENDENCY_MANAGEMENT_POM_PROPERTY );
+    }
 
-                dependencyManagement.getDependencies().add( newDependency );
-                getLog().debug( "New dependency added to Dependency Management: " + groupIdArtifactId + "="
-                                    + artifactVersion );
-            }
-        }
-        else
-        {
-            getLog().debug( "Non-matching dependencies ignored." );
-        }
+    @Override
+    public String getName()
+    {
+        return OVERRIDE_NAME;
+    }
 
-        // Apply overrides to project dependencies
-        List<Dependency> projectDependencies = model.getDependencies();
-        applyOverrides( projectDependencies, versionOverrides );
+    @Override
+    protected VersionOverrideTable loadVersionOverrides()
+        throws MavenExecutionException
+    {
+        Map<String, String> versionOverrides = new HashMap<String, String>();
+
+        Map<String, String> remoteDepOverrides = loadRemoteVersionOverrides( DEPENDENCY_MANAGEMENT_POM_PROPERTY );
+        versionOverrides.putAll( remoteDepOverrides );
 
-        // Include the overrides in the built files for repeatability
-        writeOverrideMap( model, getName(), versionOverrides );
+        readVersionOverridesFile( DEPENDENCY_VERSION_OVERRIDES_FILE_PROPERTY, versionOverrides );
 
-        // Assuming the Model changed since overrides were given
-        return true;
+        Map<String, String> propDepOverrides =
+            getProperties().getPropertiesByPrefix( DEPENDENCY_VERSION_OVERRIDE_PREFIX );
+        versionOverrides.putAll( propDepOverrides );
+
+        return new VersionOverrideTable( versionOverrides );
     }
 
     @Override
-    public String getName()
+    protected Map<String, String> getRemoteVersions( RemoteManagement remoteManagement )
     {
-        return OVERRIDE_NAME;
+        return remoteManagement.getDependencyVersions();
     }
 
-    private boolean addNewDeps()
+    @Override
+    protected boolean usesRemotePluginManagement()
     {
-        Properties systemProperties = System.getProperties();
-        String addNonMatching = systemProperties.getProperty( ADD_NON_MATCHING );
-        if ( addNonMatching != null && addNonMatching.equals( "false" ) )
-        {
-            return false;
-        }
-        return true;
+        return false;
     }
 
     /**
-     * Get the set of versions which will be used to override local dependency versions.
+     * Applies the overrides to the dependencies of one model, and records which overrides matched any of its managed
+     * dependencies
      */
-    private Map<String, String> getVersionOverrides()
+    private class DependencyOverrideVisitor
+        implements ModelVisitor
     {
-        if ( dependencyVersionOverrides == null )
-        {
-            dependencyVersionOverrides = new HashMap<String, String>();
+        private final Model model;
 
-            Map<String, String> remoteDepOverrides = loadRemoteDepVersionOverrides();
-            dependencyVersionOverrides.putAll( remoteDepOverrides );
+        private final VersionOverrideTable versionOverrides;
 
-            Map<String, String> propDepOverrides =
-                VersionPropertyReader.getPropertiesByPrefix( DEPENDENCY_VERSION_OVERRIDE_PREFIX );
-            dependencyVersionOverrides.putAll( propDepOverrides );
-        }
-        return dependencyVersionOverrides;
-    }
+        /**
+         * Indexes of the overrides which matched a managed dependency of the model
+         */
+        private final BitSet matchedVersionOverrides;
 
-    /**
-     * Apply a set of version overrides to a list of dependencies. Return a set of the overrides which were not applied.
-     * 
-     * @param dependencies The list of dependencies
-     * @param overrides The map of dependency version overrides
-     * @return The map of overrides that were not matched in the dependencies
-     */
-    private static Map<String, String> applyOverrides( List<Dependency> dependencies, Map<String, String> overrides )
-    {
-        // Duplicate the override map so unused overrides can be easily recorded
-        Map<String, String> nonMatchingVersionOverrides = new HashMap<String, String>();
-        nonMatchingVersionOverrides.putAll( overrides );
+        /**
+         * Indexes of the overrides which were applied to the model
+         */
+        private final BitSet appliedVersionOverrides = new BitSet();
 
-        // Apply matching overrides to dependencies
-        for ( Dependency dependency : dependencies )
+        DependencyOverrideVisitor( Model model, VersionOverrideTable versionOverrides )
         {
-            String groupIdArtifactId = dependency.getGroupId() + GAV_SEPERATOR + dependency.getArtifactId();
-            if ( overrides.containsKey( groupIdArtifactId ) )
+            this.model = model;
+            this.versionOverrides = versionOverrides;
+            this.matchedVersionOverrides = new BitSet( versionOverrides.size() );
+        }
+
+        @Override
+        public void visitDependency( ModelElementKind kind, Dependency dependency )
+        {
+            VersionOverrideInfo override = versionOverrides.get( dependency.getGroupId(), dependency.getArtifactId() );
+            if ( override != null )
             {
-                String artifactVersion = overrides.get( groupIdArtifactId );
-                dependency.setVersion( artifactVersion );
-                getLog().debug( "Altered dependency: " + groupIdArtifactId + "=" + artifactVersion );
-                nonMatchingVersionOverrides.remove( groupIdArtifactId );
+                dependency.setVersion( override.getVersion() );
+                appliedVersionOverrides.set( override.getIndex() );
+                if ( getLog().isDebugEnabled() )
+                {
+                    getLog().debug( "Altered dependency: " + override );
+                }
+                if ( kind == ModelElementKind.MANAGED_DEPENDENCY )
+                {
+                    matchedVersionOverrides.set( override.getIndex() );
+                }
             }
         }
 
-        return nonMatchingVersionOverrides;
-    }
-
-    /**
-     * Get dependency management version properties from a remote POM
-     * 
-     * @return Map between the GA of the dependency and the version of the dependency.
-     */
-    private static Map<String, String> loadRemoteDepVersionOverrides()
-    {
-        Properties systemProperties = System.getProperties();
-        String depMgmtPomGAV = systemProperties.getProperty( DEPENDENCY_MANAGEMENT_POM_PROPERTY );
-
-        Map<String, String> versionOverrides = new HashMap<String, String>( 0 );
+        @Override
+        public void visitPlugin( ModelElementKind kind, Plugin plugin )
+        {
+        }
 
-        if ( depMgmtPomGAV != null )
+        @Override
+        public boolean finishModel()
         {
-            try
-            {
-                EffectiveModelBuilder resolver = EffectiveModelBuilder.getInstance();
-                versionOverrides = resolver.getRemoteDependencyVersionOverrides( depMgmtPomGAV );
-            }
-            catch ( ArtifactResolutionException e )
-            {
-                getLog().warn( "Unable to resolve remote pom: " + e );
-            }
-            catch ( ArtifactDescriptorException e )
+            if ( addNewDeps )
             {
-                getLog().warn( "Unable to resolve remote pom: " + e );
+                // Add dependencies to Dependency Management which did not match any existing dependency
+                DependencyManagement dependencyManagement = model.getDependencyManagement();
+                for ( VersionOverrideInfo override : versionOverrides.getNonMatching( matchedVersionOverrides ) )
+                {
+                    Dependency newDependency = new Dependency();
+                    newDependency.setGroupId( override.getGroupID() );
+                    newDependency.setArtifactId( override.getArtifactID() );
+                    newDependency.setVersion( override.getVersion() );
+
+                    dependencyManagement.getDependencies().add( newDependency );
+                    appliedVersionOverrides.set( override.getIndex() );
+                    if ( getLog().isDebugEnabled() )
+                    {
+                        getLog().debug( "New dependency added to Dependency Management: " + override );
+                    }
+                }
             }
-            catch ( ModelBuildingException e )
+            else
             {
-                getLog().warn( "Unable to resolve remote pom: " + e );
+                getLog().debug( "Non-matching dependencies ignored." );
             }
-        }
 
-        return versionOverrides;
+            // Include the applied overrides in the built files for repeatability
+            writeOverrideMap( model, getName(), versionOverrides.getApplied( appliedVersionOverrides ) );
+            recordAppliedOverrides( model, appliedVersionOverrides );
+
+            // Assuming the Model changed since overrides were given
+            return true;
+        }
     }
 }
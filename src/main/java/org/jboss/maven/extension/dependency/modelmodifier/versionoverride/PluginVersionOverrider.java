@@ -1,18 +1,22 @@
 package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
 
+import java.io.File;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.Set;
 
+import org.apache.maven.MavenExecutionException;
+import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.model.PluginManagement;
-import org.apache.maven.model.building.ModelBuildingException;
-import org.jboss.maven.extension.dependency.resolver.EffectiveModelBuilder;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelElementKind;
+import org.jboss.maven.extension.dependency.modelmodifier.ModelVisitor;
+import org.jboss.maven.extension.dependency.resolver.RemoteManagement;
 import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
-import org.sonatype.aether.resolution.ArtifactDescriptorException;
-import org.sonatype.aether.resolution.ArtifactResolutionException;
 
 /**
  * Overrides plugin versions in a model
@@ -26,30 +30,55 @@ public class PluginVersionOverrider
     private static final String OVERRIDE_NAME = "plugin";
 
     /**
-     * The String that needs to be prepended a system property to make it a plugin version override. <br />
+     * The String that needs to be prepended a property to make it a plugin version override. <br />
      * ex: -DpluginVersion:foo:maven-bar-plugin=1.0
      */
-    private static final String PLUGIN_VERSION_OVERRIDE_PREFIX = "pluginVersion:";
+    public static final String PLUGIN_VERSION_OVERRIDE_PREFIX = "pluginVersion:";
+
+    /**
+     * The name of the property which contains the path of a file of plugin version overrides, with one
+     * groupId:artifactId=version or groupId,artifactId,version per line. Overrides given as properties win over the
+     * file. <br />
+     * ex: -DpluginVersionOverridesFile=overrides.properties
+     */
+    private static final String PLUGIN_VERSION_OVERRIDES_FILE_PROPERTY = "pluginVersionOverridesFile";
 
     /**
      * The name of the property which contains the GAV of the remote pom from which to retrieve plugin management
-     * information. <br />
-     * ex: -DpluginManagement:org.foo:bar-plugin-mgmt:1.0
+     * information. Several comma separated GAVs may be given. <br />
+     * ex: -DpluginManagement=org.foo:bar-plugin-mgmt:1.0,org.foo:baz-plugin-mgmt:2.0
      */
     private static final String PLUGIN_MANAGEMENT_POM_PROPERTY = "pluginManagement";
 
     /**
-     * Cache for override properties. Null until getVersionOverrides() is called.
+     * The plugin overrides are applied to the plugin management and the plugins of the models' builds
+     */
+    private static final Set<ModelElementKind> ELEMENT_KINDS =
+        Collections.unmodifiableSet( EnumSet.of( ModelElementKind.MANAGED_PLUGIN, ModelElementKind.PLUGIN ) );
+
+    /**
+     * @param properties The properties of the session, which must be partitioned by PLUGIN_VERSION_OVERRIDE_PREFIX
+     * @param baseDirectory The directory relative paths of override files are resolved against, null for the working
+     *            directory
      */
-    private Map<String, String> pluginVersionOverrides;
+    public PluginVersionOverrider( VersionPropertyReader properties, File baseDirectory )
+    {
+        super( properties, baseDirectory );
+    }
 
     @Override
-    public boolean updateModel( Model model )
+    public Set<ModelElementKind> getElementKinds()
     {
-        Map<String, String> versionOverrides = getVersionOverrides();
-        if ( versionOverrides.size() == 0 )
+        return ELEMENT_KINDS;
+    }
+
+    @Override
+    public ModelVisitor startModel( final Model model )
+    {
+        final VersionOverrideTable versionOverrides = getVersionOverrides();
+        if ( versionOverrides.isEmpty() )
         {
-            return false;
+            return null;
         }
 
         // If the model doesn't have any plugin management set by default, create one for it
@@ -61,18 +90,58 @@ public class PluginVersionOverrider
             getLog().debug( "Created new Plugin Management for model" );
         }
 
-        // Override plugin management versions
-        applyOverrides( pluginManagement.getPlugins(), versionOverrides );
+        return new ModelVisitor()
+        {
+            /**
+             * Indexes of the overrides which were applied to the model
+             */
+            private final BitSet appliedVersionOverrides = new BitSet();
+
+            @Override
+            public void visitDependency( ModelElementKind kind, Dependency dependency )
+            {
+            }
+
+            @Override
+            public void visitPlugin( ModelElementKind kind, Plugin plugin )
+            {
+                VersionOverrideInfo override = versionOverrides.get( plugin.getGroupId(), plugin.getArtifactId() );
+                if ( override != null )
+                {
+                    plugin.setVersion( override.getVersion() );
+                    appliedVersionOverrides.set( override.getIndex() );
+                    if ( getLog().isDebugEnabled() )
+                    {
+                        getLog().debug( "Altered plugin: " + override );
+                    }
+                }
+            }
 
-        // Override plugin versions
-        List<Plugin> projectPlugins = model.getBuild().getPlugins();
-        applyOverrides( projectPlugins, versionOverrides );
+            @Override
+            public boolean finishModel()
+            {
+                // Include the applied overrides in the built files for repeatability
+                writeOverrideMap( model, getName(), versionOverrides.getApplied( appliedVersionOverrides ) );
+                recordAppliedOverrides( model, appliedVersionOverrides );
 
-        // Include the overrides in the built files for repeatability
-        writeOverrideMap( model, getName(), versionOverrides );
+                // Assuming the Model changed since overrides were given
+                return true;
+            }
+        };
+    }
 
-        // Assuming the Model changed since overrides were given
-        return true;
+    @Override
+    public boolean isActive()
+    {
+        return getProperties().getProperty( PLUGIN_MANAGEMENT_POM_PROPERTY ) != null
+            || getProperties().getProperty( PLUGIN_VERSION_OVERRIDES_FILE_PROPERTY ) != null
+            || getProperties().hasPropertyWithPrefix( PLUGIN_VERSION_OVERRIDE_PREFIX );
+    }
+
+    @Override
+    public void prefetch()
+    {
+        startLoadingRemotePoms( PLUGIN_MANAGEMENT_POM_PROPERTY );
     }
 
     @Override
@@ -81,78 +150,33 @@ public class PluginVersionOverrider
         return OVERRIDE_NAME;
     }
 
-    /**
-     * Get the set of versions which will be used to override local plugin versions.
-     */
-    private Map<String, String> getVersionOverrides()
+    @Override
+    protected VersionOverrideTable loadVersionOverrides()
+        throws MavenExecutionException
     {
-        if ( pluginVersionOverrides == null )
-        {
-            pluginVersionOverrides = new HashMap<String, String>();
+        Map<String, String> versionOverrides = new HashMap<String, String>();
 
-            Map<String, String> remoteDepOverrides = loadRemotePluginVersionOverrides();
-            pluginVersionOverrides.putAll( remoteDepOverrides );
+        Map<String, String> remoteDepOverrides = loadRemoteVersionOverrides( PLUGIN_MANAGEMENT_POM_PROPERTY );
+        versionOverrides.putAll( remoteDepOverrides );
 
-            Map<String, String> propPluginOverrides =
-                VersionPropertyReader.getPropertiesByPrefix( PLUGIN_VERSION_OVERRIDE_PREFIX );
-            pluginVersionOverrides.putAll( propPluginOverrides );
-        }
-        return pluginVersionOverrides;
+        readVersionOverridesFile( PLUGIN_VERSION_OVERRIDES_FILE_PROPERTY, versionOverrides );
+
+        Map<String, String> propPluginOverrides =
+            getProperties().getPropertiesByPrefix( PLUGIN_VERSION_OVERRIDE_PREFIX );
+        versionOverrides.putAll( propPluginOverrides );
+
+        return new VersionOverrideTable( versionOverrides );
     }
 
-    /**
-     * Set the versions of any plugins which match the contents of the list of plugin overrides
-     * 
-     * @param plugins The list of plugins to modify
-     * @param pluginVersionOverrides The list of version overrides to apply to the plugins
-     */
-    private static void applyOverrides( List<Plugin> plugins, Map<String, String> pluginVersionOverrides )
+    @Override
+    protected Map<String, String> getRemoteVersions( RemoteManagement remoteManagement )
     {
-        for ( Plugin plugin : plugins )
-        {
-            String groupIdArtifactId = plugin.getGroupId() + GAV_SEPERATOR + plugin.getArtifactId();
-            if ( pluginVersionOverrides.containsKey( groupIdArtifactId ) )
-            {
-                String overrideVersion = pluginVersionOverrides.get( groupIdArtifactId );
-                plugin.setVersion( overrideVersion );
-                getLog().debug( "Altered plugin: " + groupIdArtifactId + "=" + overrideVersion );
-            }
-        }
+        return remoteManagement.getPluginVersions();
     }
 
-    /**
-     * Get plugin management version properties from a remote POM
-     * 
-     * @return Map between the GA of the plugin and the version of the plugin.
-     */
-    private static Map<String, String> loadRemotePluginVersionOverrides()
+    @Override
+    protected boolean usesRemotePluginManagement()
     {
-        Properties systemProperties = System.getProperties();
-        String pluginMgmtPomGAV = systemProperties.getProperty( PLUGIN_MANAGEMENT_POM_PROPERTY );
-
-        Map<String, String> versionOverrides = new HashMap<String, String>( 0 );
-
-        if ( pluginMgmtPomGAV != null )
-        {
-            try
-            {
-                EffectiveModelBuilder resolver = EffectiveModelBuilder.getInstance();
-                versionOverrides = resolver.getRemotePluginVersionOverrides( pluginMgmtPomGAV );
-            }
-            catch ( ArtifactResolutionException e )
-            {
-                getLog().warn( "Unable to resolve remote pom: " + e );
-            }
-            catch ( ArtifactDescriptorException e )
-            {
-                getLog().warn( "Unable to resolve remote pom: " + e );
-            }
-            catch ( ModelBuildingException e )
-            {
-                getLog().warn( "Unable to resolve remote pom: " + e );
-            }
-        }
-
-        return versionOverrides;
+        return true;
     }
 }
@@ -1,22 +1,26 @@
 package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
 
+/**
+ * A single version override, one row of a VersionOverrideTable. Rows are immutable and shared by all the models the
+ * table is applied to, whether an override matched in a given model is tracked by its index.
+ */
 public class VersionOverrideInfo
 {
 
-    private String groupID;
+    private final String groupID;
 
-    private String artifactID;
+    private final String artifactID;
 
-    private String version;
+    private final String version;
 
-    private boolean overriden;
+    private final int index;
 
-    public VersionOverrideInfo( String groupID, String artifactID, String version )
+    public VersionOverrideInfo( String groupID, String artifactID, String version, int index )
     {
         this.groupID = groupID;
         this.artifactID = artifactID;
         this.version = version;
-        this.overriden = false;
+        this.index = index;
     }
 
     public String getGroupID()
@@ -34,19 +38,17 @@ public class VersionOverrideInfo
         return version;
     }
 
-    public boolean isOverriden()
+    /**
+     * @return The position of this override in its table
+     */
+    public int getIndex()
     {
-        return overriden;
-    }
-
-    public void setOverriden( boolean overriden )
-    {
-        this.overriden = overriden;
+        return index;
     }
 
     public String toString()
     {
-        return ""; // TODO
+        return groupID + ":" + artifactID + "=" + version;
     }
 
 }
@@ -0,0 +1,371 @@
+package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
+
+import java.util.Arrays;
+
+/**
+ * Index of the version overrides whose groupId or artifactId is a pattern rather than a plain value. <br />
+ * ex: org.hibernate:* or io.netty:netty-* or org.jboss.*:jboss-logging
+ * <p>
+ * The groupId of a pattern is a plain groupId, optionally ending with a .* segment which matches the groupIds below it,
+ * or * alone which matches any groupId. The artifactId may contain any number of * wildcards. The patterns are
+ * compiled into a trie keyed by groupId segment, each node holding a character trie of the literal artifactId prefixes
+ * of its patterns, so a lookup walks the groupId and artifactId once whatever the number of patterns.
+ * <p>
+ * When several patterns match, the most specific one wins: a plain groupId before a groupId pattern, a longer groupId
+ * before a shorter one, then the longer literal artifactId prefix, then the longer pattern.
+ */
+class VersionOverridePatternIndex
+{
+    private static final char WILDCARD = '*';
+
+    private static final String GROUP_ID_WILDCARD = String.valueOf( WILDCARD );
+
+    private final GroupIdNode root = new GroupIdNode();
+
+    private int size;
+
+    /**
+     * @return true if the groupId or the artifactId is a pattern
+     */
+    static boolean isPattern( String groupId, String artifactId )
+    {
+        return groupId.indexOf( WILDCARD ) >= 0 || artifactId.indexOf( WILDCARD ) >= 0;
+    }
+
+    /**
+     * Add a pattern override to the index
+     * 
+     * @param override The override, its groupId and artifactId are the patterns
+     * @return false if the groupId pattern is not supported and the override was not added
+     */
+    boolean add( VersionOverrideInfo override )
+    {
+        String groupId = override.getGroupID();
+        boolean below = false;
+        if ( groupId.equals( GROUP_ID_WILDCARD ) )
+        {
+            groupId = "";
+            below = true;
+        }
+        else if ( groupId.endsWith( "." + WILDCARD ) )
+        {
+            groupId = groupId.substring( 0, groupId.length() - 2 );
+            below = true;
+        }
+        if ( groupId.indexOf( WILDCARD ) >= 0 )
+        {
+            return false;
+        }
+
+        GroupIdNode node = root;
+        if ( groupId.length() > 0 )
+        {
+            for ( String segment : groupId.split( "\\." ) )
+            {
+                node = node.getOrAddChild( segment );
+            }
+        }
+
+        ArtifactIdNode artifactIdNode;
+        if ( below )
+        {
+            if ( node.below == null )
+            {
+                node.below = new ArtifactIdNode();
+            }
+            artifactIdNode = node.below;
+        }
+        else
+        {
+            if ( node.exact == null )
+            {
+                node.exact = new ArtifactIdNode();
+            }
+            artifactIdNode = node.exact;
+        }
+
+        String artifactId = override.getArtifactID();
+        int prefixLength = artifactId.indexOf( WILDCARD );
+        if ( prefixLength < 0 )
+        {
+            prefixLength = artifactId.length();
+        }
+        for ( int i = 0; i < prefixLength; i++ )
+        {
+            artifactIdNode = artifactIdNode.getOrAddChild( artifactId.charAt( i ) );
+        }
+        artifactIdNode.addPattern( override );
+
+        size++;
+        return true;
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Find the most specific pattern override matching an artifact
+     * 
+     * @param groupId The groupId of the artifact
+     * @param artifactId The artifactId of the artifact
+     * @return The override, or null if no pattern matches the artifact
+     */
+    VersionOverrideInfo get( String groupId, String artifactId )
+    {
+        if ( size == 0 )
+        {
+            return null;
+        }
+        return find( root, groupId, 0, artifactId );
+    }
+
+    /**
+     * Match the groupId from the given segment on against the node, deeper nodes first
+     */
+    private static VersionOverrideInfo find( GroupIdNode node, String groupId, int start, String artifactId )
+    {
+        if ( start > groupId.length() )
+        {
+            // The whole groupId was matched
+            return node.exact == null ? null : node.exact.find( artifactId, 0 );
+        }
+
+        int end = groupId.indexOf( '.', start );
+        if ( end < 0 )
+        {
+            end = groupId.length();
+        }
+        GroupIdNode child = node.getChild( groupId, start, end );
+        if ( child != null )
+        {
+            VersionOverrideInfo override = find( child, groupId, end + 1, artifactId );
+            if ( override != null )
+            {
+                return override;
+            }
+        }
+
+        // At least one segment of the groupId is left, so the patterns for the groupIds below this node apply
+        return node.below == null ? null : node.below.find( artifactId, 0 );
+    }
+
+    /**
+     * Match a glob pattern against a string, from the given positions on
+     */
+    private static boolean matches( String pattern, int patternIndex, String text, int textIndex )
+    {
+        int p = patternIndex;
+        int t = textIndex;
+        int starPattern = -1;
+        int starText = -1;
+        while ( t < text.length() )
+        {
+            if ( p < pattern.length() && pattern.charAt( p ) == WILDCARD )
+            {
+                starPattern = p++;
+                starText = t;
+            }
+            else if ( p < pattern.length() && pattern.charAt( p ) == text.charAt( t ) )
+            {
+                p++;
+                t++;
+            }
+            else if ( starPattern >= 0 )
+            {
+                // Let the last wildcard match one more character
+                p = starPattern + 1;
+                t = ++starText;
+            }
+            else
+            {
+                return false;
+            }
+        }
+        while ( p < pattern.length() && pattern.charAt( p ) == WILDCARD )
+        {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    /**
+     * Compare a region of a string to another string, in the order of String.compareTo
+     */
+    private static int compareRegion( String string, int start, int end, String other )
+    {
+        int length = Math.min( end - start, other.length() );
+        for ( int i = 0; i < length; i++ )
+        {
+            int difference = string.charAt( start + i ) - other.charAt( i );
+            if ( difference != 0 )
+            {
+                return difference;
+            }
+        }
+        return ( end - start ) - other.length();
+    }
+
+    /**
+     * A groupId prefix. The children are sorted by segment so that they can be searched without extracting the
+     * segments of the groupId looked up.
+     */
+    private static class GroupIdNode
+    {
+        private String[] segments = new String[0];
+
+        private GroupIdNode[] children = new GroupIdNode[0];
+
+        /**
+         * Patterns for the groupId of this node
+         */
+        private ArtifactIdNode exact;
+
+        /**
+         * Patterns for the groupIds below this node
+         */
+        private ArtifactIdNode below;
+
+        GroupIdNode getChild( String groupId, int start, int end )
+        {
+            int low = 0;
+            int high = segments.length - 1;
+            while ( low <= high )
+            {
+                int middle = ( low + high ) >>> 1;
+                int comparison = compareRegion( groupId, start, end, segments[middle] );
+                if ( comparison == 0 )
+                {
+                    return children[middle];
+                }
+                if ( comparison > 0 )
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle - 1;
+                }
+            }
+            return null;
+        }
+
+        GroupIdNode getOrAddChild( String segment )
+        {
+            int index = Arrays.binarySearch( segments, segment );
+            if ( index >= 0 )
+            {
+                return children[index];
+            }
+            index = -index - 1;
+
+            GroupIdNode child = new GroupIdNode();
+            String[] newSegments = new String[segments.length + 1];
+            GroupIdNode[] newChildren = new GroupIdNode[children.length + 1];
+            System.arraycopy( segments, 0, newSegments, 0, index );
+            System.arraycopy( children, 0, newChildren, 0, index );
+            newSegments[index] = segment;
+            newChildren[index] = child;
+            System.arraycopy( segments, index, newSegments, index + 1, segments.length - index );
+            System.arraycopy( children, index, newChildren, index + 1, children.length - index );
+            segments = newSegments;
+            children = newChildren;
+            return child;
+        }
+    }
+
+    /**
+     * A literal artifactId prefix, holding the patterns which start with it and have a wildcard or end right after it
+     */
+    private static class ArtifactIdNode
+    {
+        private char[] characters = new char[0];
+
+        private ArtifactIdNode[] children = new ArtifactIdNode[0];
+
+        /**
+         * Longest first, so that the first match is the most specific
+         */
+        private VersionOverrideInfo[] patterns = new VersionOverrideInfo[0];
+
+        /**
+         * Match the artifactId from the given position on, longer prefixes first
+         */
+        VersionOverrideInfo find( String artifactId, int depth )
+        {
+            if ( depth < artifactId.length() )
+            {
+                int index = Arrays.binarySearch( characters, artifactId.charAt( depth ) );
+                if ( index >= 0 )
+                {
+                    VersionOverrideInfo override = children[index].find( artifactId, depth + 1 );
+                    if ( override != null )
+                    {
+                        return override;
+                    }
+                }
+            }
+
+            for ( VersionOverrideInfo pattern : patterns )
+            {
+                if ( matches( pattern.getArtifactID(), depth, artifactId, depth ) )
+                {
+                    return pattern;
+                }
+            }
+            return null;
+        }
+
+        ArtifactIdNode getOrAddChild( char character )
+        {
+            int index = Arrays.binarySearch( characters, character );
+            if ( index >= 0 )
+            {
+                return children[index];
+            }
+            index = -index - 1;
+
+            ArtifactIdNode child = new ArtifactIdNode();
+            char[] newCharacters = new char[characters.length + 1];
+            ArtifactIdNode[] newChildren = new ArtifactIdNode[children.length + 1];
+            System.arraycopy( characters, 0, newCharacters, 0, index );
+            System.arraycopy( children, 0, newChildren, 0, index );
+            newCharacters[index] = character;
+            newChildren[index] = child;
+            System.arraycopy( characters, index, newCharacters, index + 1, characters.length - index );
+            System.arraycopy( children, index, newChildren, index + 1, children.length - index );
+            characters = newCharacters;
+            children = newChildren;
+            return child;
+        }
+
+        void addPattern( VersionOverrideInfo override )
+        {
+            String artifactId = override.getArtifactID();
+            int index = 0;
+            while ( index < patterns.length && compare( patterns[index].getArtifactID(), artifactId ) <= 0 )
+            {
+                index++;
+            }
+
+            VersionOverrideInfo[] newPatterns = new VersionOverrideInfo[patterns.length + 1];
+            System.arraycopy( patterns, 0, newPatterns, 0, index );
+            newPatterns[index] = override;
+            System.arraycopy( patterns, index, newPatterns, index + 1, patterns.length - index );
+            patterns = newPatterns;
+        }
+
+        /**
+         * Longer patterns first, then in String order to stay independent of the order the overrides were given in
+         */
+        private static int compare( String pattern, String other )
+        {
+            if ( pattern.length() != other.length() )
+            {
+                return other.length() - pattern.length();
+            }
+            return pattern.compareTo( other );
+        }
+    }
+}
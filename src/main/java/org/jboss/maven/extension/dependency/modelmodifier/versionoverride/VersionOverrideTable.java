@@ -0,0 +1,232 @@
+package org.jboss.maven.extension.dependency.modelmodifier.versionoverride;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+
+/**
+ * Immutable table of version overrides, built once per session and shared by all the models it is applied to. Each
+ * model tracks which overrides it matched in a BitSet indexed by row, so applying the table never copies it.
+ * <p>
+ * Lookups are done on the groupId and artifactId separately, in an open addressing index keyed by a hash combined from
+ * the hash codes of both strings. Strings cache their hash codes, so a lookup doesn't allocate and usually takes a
+ * single probe.
+ * <p>
+ * Overrides whose groupId or artifactId contains a * wildcard are kept in a VersionOverridePatternIndex, which is only
+ * searched when no exact override matched. They are numbered after the exact overrides and never reported as
+ * non-matching, since there is no single artifact to add for them.
+ */
+public class VersionOverrideTable
+{
+    private static final Logger logger = Logging.getLogger();
+
+    /**
+     * The accepted overrides, between groupId:artifactId or the pattern and version, in table order
+     */
+    private final Map<String, String> overrides;
+
+    private final VersionOverrideInfo[] rows;
+
+    /**
+     * Open addressing index of the rows, with linear probing. The length is a power of two, at least twice the number
+     * of rows, so there is always a free slot to end a probe sequence.
+     */
+    private final VersionOverrideInfo[] slots;
+
+    /**
+     * The combined hash of the row in each slot, compared before the strings
+     */
+    private final int[] slotHashes;
+
+    private final VersionOverridePatternIndex patterns = new VersionOverridePatternIndex();
+
+    /**
+     * The pattern overrides, by index minus the number of exact overrides
+     */
+    private final VersionOverrideInfo[] patternRows;
+
+    /**
+     * Build a table from a map of overrides. Keys which are not a groupId:artifactId or a supported pattern are ignored
+     * with a warning.
+     * 
+     * @param overrides Map between groupId:artifactId and version
+     */
+    public VersionOverrideTable( Map<String, String> overrides )
+    {
+        List<VersionOverrideInfo> rowList = new ArrayList<VersionOverrideInfo>( overrides.size() );
+        List<Entry<String, String>> patternOverrides = new ArrayList<Entry<String, String>>();
+        for ( Entry<String, String> override : overrides.entrySet() )
+        {
+            String groupIdArtifactId = override.getKey();
+            String[] groupIdArtifactIdParts = groupIdArtifactId.split( AbstractVersionOverrider.GAV_SEPERATOR );
+            if ( groupIdArtifactIdParts.length != 2 )
+            {
+                logger.warn( "Ignoring version override of '" + groupIdArtifactId
+                    + "', expected groupId:artifactId" );
+                continue;
+            }
+            if ( VersionOverridePatternIndex.isPattern( groupIdArtifactIdParts[0], groupIdArtifactIdParts[1] ) )
+            {
+                patternOverrides.add( override );
+                continue;
+            }
+            VersionOverrideInfo row =
+                new VersionOverrideInfo( groupIdArtifactIdParts[0], groupIdArtifactIdParts[1], override.getValue(),
+                                         rowList.size() );
+            rowList.add( row );
+        }
+        rows = rowList.toArray( new VersionOverrideInfo[rowList.size()] );
+
+        int capacity = Integer.highestOneBit( Math.max( 2, rows.length * 2 - 1 ) ) << 1;
+        slots = new VersionOverrideInfo[capacity];
+        slotHashes = new int[capacity];
+        int mask = capacity - 1;
+        for ( VersionOverrideInfo row : rows )
+        {
+            int hash = hash( row.getGroupID(), row.getArtifactID() );
+            int slot = hash & mask;
+            while ( slots[slot] != null )
+            {
+                slot = ( slot + 1 ) & mask;
+            }
+            slots[slot] = row;
+            slotHashes[slot] = hash;
+        }
+
+        List<VersionOverrideInfo> patternRowList = new ArrayList<VersionOverrideInfo>( patternOverrides.size() );
+        for ( Entry<String, String> override : patternOverrides )
+        {
+            String[] groupIdArtifactIdParts = override.getKey().split( AbstractVersionOverrider.GAV_SEPERATOR );
+            VersionOverrideInfo pattern =
+                new VersionOverrideInfo( groupIdArtifactIdParts[0], groupIdArtifactIdParts[1], override.getValue(),
+                                         rows.length + patternRowList.size() );
+            if ( patterns.add( pattern ) )
+            {
+                patternRowList.add( pattern );
+            }
+            else
+            {
+                logger.warn( "Ignoring version override of '" + override.getKey()
+                    + "', a groupId pattern can only end with .* or be *" );
+            }
+        }
+        patternRows = patternRowList.toArray( new VersionOverrideInfo[patternRowList.size()] );
+
+        BitSet accepted = new BitSet( getOverrideCount() );
+        accepted.set( 0, getOverrideCount() );
+        this.overrides = Collections.unmodifiableMap( getApplied( accepted ) );
+    }
+
+    /**
+     * @return The number of exact overrides in the table
+     */
+    public int size()
+    {
+        return rows.length;
+    }
+
+    /**
+     * @return The number of exact and pattern overrides in the table
+     */
+    public int getOverrideCount()
+    {
+        return rows.length + patternRows.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return rows.length == 0 && patterns.isEmpty();
+    }
+
+    /**
+     * Find the override of an artifact, its exact override if there is one, else the most specific pattern matching it
+     * 
+     * @param groupId The groupId of the artifact
+     * @param artifactId The artifactId of the artifact
+     * @return The override, or null if the artifact is not overridden
+     */
+    public VersionOverrideInfo get( String groupId, String artifactId )
+    {
+        if ( groupId == null || artifactId == null )
+        {
+            return null;
+        }
+
+        int hash = hash( groupId, artifactId );
+        int mask = slots.length - 1;
+        for ( int slot = hash & mask;; slot = ( slot + 1 ) & mask )
+        {
+            VersionOverrideInfo row = slots[slot];
+            if ( row == null )
+            {
+                return patterns.get( groupId, artifactId );
+            }
+            if ( slotHashes[slot] == hash && row.getArtifactID().equals( artifactId )
+                && row.getGroupID().equals( groupId ) )
+            {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Get the overrides which were not matched
+     * 
+     * @param matched The indexes of the overrides which were matched
+     * @return The other overrides, in table order
+     */
+    public List<VersionOverrideInfo> getNonMatching( BitSet matched )
+    {
+        List<VersionOverrideInfo> nonMatching = new ArrayList<VersionOverrideInfo>();
+        for ( int i = matched.nextClearBit( 0 ); i < rows.length; i = matched.nextClearBit( i + 1 ) )
+        {
+            nonMatching.add( rows[i] );
+        }
+        return nonMatching;
+    }
+
+    /**
+     * Get the overrides which were applied, to record them
+     * 
+     * @param applied The indexes of the overrides which were applied, exact or pattern
+     * @return Map between groupId:artifactId, or the pattern, and version of the applied overrides, in table order
+     */
+    public Map<String, String> getApplied( BitSet applied )
+    {
+        Map<String, String> appliedOverrides = new LinkedHashMap<String, String>();
+        for ( int i = applied.nextSetBit( 0 ); i >= 0; i = applied.nextSetBit( i + 1 ) )
+        {
+            VersionOverrideInfo row = i < rows.length ? rows[i] : patternRows[i - rows.length];
+            appliedOverrides.put( row.getGroupID() + AbstractVersionOverrider.GAV_SEPERATOR + row.getArtifactID(),
+                                  row.getVersion() );
+        }
+        return appliedOverrides;
+    }
+
+    /**
+     * Combine the hash codes of a groupId and an artifactId, spreading the bits so that the low bits used as slot index
+     * depend on the whole hash
+     */
+    private static int hash( String groupId, String artifactId )
+    {
+        int hash = groupId.hashCode() * 31 + artifactId.hashCode();
+        hash *= 0x9E3779B9;
+        return hash ^ ( hash >>> 16 );
+    }
+
+    /**
+     * @return Unmodifiable map between groupId:artifactId or the pattern and version of all the overrides accepted by
+     *         the table, in table order. Invalid overrides which were ignored are left out.
+     */
+    public Map<String, String> asMap()
+    {
+        return overrides;
+    }
+}
@@ -0,0 +1,159 @@
+package org.jboss.maven.extension.dependency.resolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.maven.model.building.ModelCache;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+
+/**
+ * Session scoped ModelCache used for the models built by the extension. Parent and import scope POMs which are shared
+ * between the built models are only read and processed once. The number of cached entries is bounded, the least
+ * recently used entry is evicted first. The hits and misses are also counted in the metrics of the extension.
+ */
+public class BoundedModelCache
+    implements ModelCache
+{
+    /**
+     * Default maximum number of cached entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private final Map<Key, Object> entries;
+
+    private long hitCount;
+
+    private long missCount;
+
+    public BoundedModelCache()
+    {
+        this( DEFAULT_MAX_ENTRIES );
+    }
+
+    public BoundedModelCache( final int maxEntries )
+    {
+        this.entries = new LinkedHashMap<Key, Object>( 64, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Key, Object> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void put( String groupId, String artifactId, String version, String tag, Object data )
+    {
+        entries.put( new Key( groupId, artifactId, version, tag ), data );
+    }
+
+    @Override
+    public synchronized Object get( String groupId, String artifactId, String version, String tag )
+    {
+        Object data = entries.get( new Key( groupId, artifactId, version, tag ) );
+        if ( data == null )
+        {
+            missCount++;
+            ExtensionMetrics.getInstance().count( ExtensionMetrics.MODEL_CACHE_MISSES, 1 );
+        }
+        else
+        {
+            hitCount++;
+            ExtensionMetrics.getInstance().count( ExtensionMetrics.MODEL_CACHE_HITS, 1 );
+        }
+        return data;
+    }
+
+    /**
+     * @return The number of lookups which were answered from the cache
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of lookups which were not found in the cache
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * @return The number of entries currently held by the cache
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return entries.size() + " entries, " + hitCount + " hits, " + missCount + " misses";
+    }
+
+    private static final class Key
+    {
+        private final String groupId;
+
+        private final String artifactId;
+
+        private final String version;
+
+        private final String tag;
+
+        private final int hashCode;
+
+        Key( String groupId, String artifactId, String version, String tag )
+        {
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.tag = tag;
+
+            int hash = 17;
+            hash = hash * 31 + hash( groupId );
+            hash = hash * 31 + hash( artifactId );
+            hash = hash * 31 + hash( version );
+            hash = hash * 31 + hash( tag );
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+            if ( !( obj instanceof Key ) )
+            {
+                return false;
+            }
+            Key that = (Key) obj;
+            return eq( artifactId, that.artifactId ) && eq( groupId, that.groupId ) && eq( version, that.version )
+                && eq( tag, that.tag );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        private static int hash( Object obj )
+        {
+            return obj != null ? obj.hashCode() : 0;
+        }
+
+        private static boolean eq( Object s, Object o )
+        {
+            return s != null ? s.equals( o ) : o == null;
+        }
+    }
+}
@@ -1,32 +1,48 @@
 package org.jboss.maven.extension.dependency.resolver;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Plugin;
 import org.apache.maven.model.building.DefaultModelBuildingRequest;
+import org.apache.maven.model.building.FileModelSource;
 import org.apache.maven.model.building.ModelBuilder;
 import org.apache.maven.model.building.ModelBuildingException;
 import org.apache.maven.model.building.ModelBuildingRequest;
 import org.apache.maven.model.building.ModelBuildingResult;
 import org.apache.maven.model.resolution.ModelResolver;
-import org.codehaus.plexus.DefaultPlexusContainer;
-import org.codehaus.plexus.PlexusContainerException;
-import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.apache.maven.model.resolution.UnresolvableModelException;
 import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanManagementExtractor;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
 import org.jboss.maven.extension.dependency.util.log.Logging;
+import org.jboss.maven.extension.dependency.util.metrics.ExtensionMetrics;
+import org.jboss.maven.extension.dependency.util.metrics.TimerMetric;
+import org.jboss.maven.extension.dependency.util.metrics.TraceRecorder;
 import org.sonatype.aether.RepositorySystem;
 import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.artifact.Artifact;
 import org.sonatype.aether.graph.Dependency;
 import org.sonatype.aether.impl.ArtifactResolver;
 import org.sonatype.aether.impl.RemoteRepositoryManager;
-import org.sonatype.aether.impl.internal.DefaultRemoteRepositoryManager;
+import org.sonatype.aether.repository.AuthenticationSelector;
 import org.sonatype.aether.repository.RemoteRepository;
 import org.sonatype.aether.resolution.ArtifactDescriptorException;
 import org.sonatype.aether.resolution.ArtifactDescriptorRequest;
@@ -46,14 +62,67 @@ public class EffectiveModelBuilder
 
     private static EffectiveModelBuilder instance;
 
+    /**
+     * Kinds of maps stored in the persistent cache
+     */
+    private static final String DEPENDENCY_OVERRIDES = "dependency";
+
+    private static final String PLUGIN_OVERRIDES = "plugin";
+
+    /**
+     * Suffix of the keys of remote POMs loaded only for their dependency management
+     */
+    private static final String DEPENDENCY_MANAGEMENT_KEY = "#dependencyManagement";
+
+    /**
+     * The maximum number of remote POMs loaded concurrently
+     */
+    private static final int MAX_LOADER_THREADS = 8;
+
+    private static final long LOADER_KEEP_ALIVE_SECONDS = 30;
+
     private MavenSession session;
 
+    /**
+     * The properties of the session, used to configure the loading and to build the remote models
+     */
+    private VersionPropertyReader sessionProperties;
+
     private RepositorySystem repositorySystem;
 
     private ArtifactResolver resolver;
 
+    private RemoteRepositoryManager remoteRepositoryManager;
+
     private ModelBuilder modelBuilder;
 
+    /**
+     * Cache for the parent and import POMs of all the models built during this session
+     */
+    private BoundedModelCache modelCache;
+
+    /**
+     * Persistent cache of the override maps extracted from remote POMs. Null if disabled.
+     */
+    private OverrideMapCache overrideMapCache;
+
+    /**
+     * Management information of the remote POMs requested during this session, by GAV. POMs loaded only for their
+     * dependency management use the GAV followed by DEPENDENCY_MANAGEMENT_KEY.
+     */
+    private final ConcurrentMap<String, FutureTask<RemoteManagement>> remoteManagement =
+        new ConcurrentHashMap<String, FutureTask<RemoteManagement>>();
+
+    /**
+     * Runs the background loads of remote POMs. Idle threads time out, so the pool doesn't need to be shut down.
+     */
+    private final ThreadPoolExecutor loaderExecutor;
+
+    /**
+     * How the management information of remote POMs is computed
+     */
+    private RemoteStrategy strategy;
+
     private List<RemoteRepository> repositories;
 
     public List<RemoteRepository> getRepositories()
@@ -71,17 +140,59 @@ public class EffectiveModelBuilder
      */
     private EffectiveModelBuilder()
     {
-
+        loaderExecutor =
+            new ThreadPoolExecutor( MAX_LOADER_THREADS, MAX_LOADER_THREADS, LOADER_KEEP_ALIVE_SECONDS,
+                                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new LoaderThreadFactory() );
+        loaderExecutor.allowCoreThreadTimeOut( true );
     }
 
-    public static void init( MavenSession session, ArtifactResolver resolver, ModelBuilder modelBuilder )
-        throws ComponentLookupException, PlexusContainerException
+    /**
+     * Initialize the instance with the components of the running maven session. Nothing is resolved or built until one
+     * of the remote lookups is used, so this is cheap to call. Calling it again for the same session keeps the existing
+     * instance, including any remote POMs already loaded or being loaded.
+     * 
+     * @param session The current maven session
+     * @param properties The properties of the session
+     * @param repositorySystem The repository system of the session's container
+     * @param resolver The artifact resolver of the session's container
+     * @param remoteRepositoryManager The remote repository manager of the session's container
+     * @param modelBuilder The model builder of the session's container
+     */
+    public static synchronized void init( MavenSession session, VersionPropertyReader properties,
+                                          RepositorySystem repositorySystem, ArtifactResolver resolver,
+                                          RemoteRepositoryManager remoteRepositoryManager, ModelBuilder modelBuilder )
     {
+        if ( instance != null && instance.session == session )
+        {
+            return;
+        }
+
+        long start = System.nanoTime();
         instance = new EffectiveModelBuilder();
         instance.session = session;
-        instance.repositorySystem = newRepositorySystem();
+        instance.sessionProperties = properties;
+        instance.repositorySystem = repositorySystem;
         instance.resolver = resolver;
+        instance.remoteRepositoryManager = remoteRepositoryManager;
         instance.modelBuilder = modelBuilder;
+        instance.modelCache = new BoundedModelCache();
+        instance.strategy = RemoteStrategy.fromProperty( properties.getProperty( RemoteStrategy.STRATEGY_PROPERTY ) );
+        if ( OverrideMapCache.isEnabled( properties ) )
+        {
+            File localRepository = session.getRepositorySession().getLocalRepository().getBasedir();
+            instance.overrideMapCache = new OverrideMapCache( localRepository, properties );
+        }
+        TraceRecorder.getInstance().record( "EffectiveModelBuilder.init", "init", start );
+    }
+
+    /**
+     * Get the cache used for the models built during this session
+     * 
+     * @return The model cache, never null after init()
+     */
+    public BoundedModelCache getModelCache()
+    {
+        return modelCache;
     }
 
     /**
@@ -94,103 +205,387 @@ public class EffectiveModelBuilder
         return instance;
     }
 
+    /**
+     * Get the dependency management versions of a remote POM
+     * 
+     * @param gav The GAV of the remote POM
+     * @return Map between the GA of the dependency and the version of the dependency.
+     */
     public Map<String, String> getRemoteDependencyVersionOverrides( String gav )
-        throws ArtifactResolutionException, ArtifactDescriptorException, ModelBuildingException
+        throws ArtifactResolutionException, ModelBuildingException
     {
-        Map<String, String> versionOverrides = new HashMap<String, String>();
+        return getRemoteDependencyManagement( gav ).getDependencyVersions();
+    }
 
-        System.out.println( "resolving gav: " + gav );
-        Artifact artifact = resolvePom( gav );
+    /**
+     * Get the plugin management versions of a remote POM
+     * 
+     * @param gav The GAV of the remote POM
+     * @return Map between the GA of the plugin and the version of the plugin.
+     */
+    public Map<String, String> getRemotePluginVersionOverrides( String gav )
+        throws ArtifactResolutionException, ModelBuildingException
+    {
+        return getRemoteManagement( gav ).getPluginVersions();
+    }
 
-        ModelResolver modelResolver = this.newModelResolver();
+    /**
+     * Start loading the management information of several remote POMs in the background. The POMs are resolved and
+     * built concurrently, a later getRemoteManagement() call for one of the GAVs waits for its result.
+     * 
+     * @param gavs The GAVs of the remote POMs
+     */
+    public void startLoading( Collection<String> gavs )
+    {
+        for ( String gav : gavs )
+        {
+            getLoadTask( gav, false, true );
+        }
+    }
 
-        Model effectiveModel = buildModel( artifact.getFile(), modelResolver );
-        System.out.println( "Built model for project: " + effectiveModel.getName() );
+    /**
+     * Start loading the dependency management of several remote POMs in the background. A later
+     * getRemoteDependencyManagement() call for one of the GAVs waits for its result.
+     * 
+     * @param gavs The GAVs of the remote POMs
+     */
+    public void startLoadingDependencyManagement( Collection<String> gavs )
+    {
+        for ( String gav : gavs )
+        {
+            getLoadTask( gav, true, true );
+        }
+    }
 
-        for ( org.apache.maven.model.Dependency dep : effectiveModel.getDependencyManagement().getDependencies() )
+    /**
+     * Get the management information of a remote POM. The effective model of each distinct GAV is only built once per
+     * session, callers asking for the same GAV concurrently wait for the same build.
+     * 
+     * @param gav The GAV of the remote POM
+     * @return The complete dependency management, plugin management and properties of the remote POM
+     * @throws ArtifactResolutionException If the POM or one of its parents can't be resolved
+     * @throws ModelBuildingException If the effective model can't be built
+     */
+    public RemoteManagement getRemoteManagement( String gav )
+        throws ArtifactResolutionException, ModelBuildingException
+    {
+        // The dependency management may already be loaded, and be complete if it didn't come from the descriptor
+        FutureTask<RemoteManagement> dependencyTask = remoteManagement.get( gav + DEPENDENCY_MANAGEMENT_KEY );
+        if ( dependencyTask != null && dependencyTask.isDone() && !remoteManagement.containsKey( gav ) )
         {
-            String groupIdArtifactId = dep.getGroupId() + ":" + dep.getArtifactId();
-            versionOverrides.put( groupIdArtifactId, dep.getVersion() );
-            System.out.println( "Added version override for: " + groupIdArtifactId + ":" + dep.getVersion() );
+            RemoteManagement management = await( dependencyTask, gav );
+            if ( management.isComplete() )
+            {
+                return management;
+            }
         }
+        return await( getLoadTask( gav, false, false ), gav );
+    }
 
-        return versionOverrides;
+    /**
+     * Get the dependency management of a remote POM. Depending on the strategy, this can be cheaper than
+     * getRemoteManagement(), the plugin management of the result may be empty.
+     * 
+     * @param gav The GAV of the remote POM
+     * @return The management information of the remote POM, complete or not
+     * @throws ArtifactResolutionException If the POM or one of its parents can't be resolved
+     * @throws ModelBuildingException If the effective model can't be built
+     */
+    public RemoteManagement getRemoteDependencyManagement( String gav )
+        throws ArtifactResolutionException, ModelBuildingException
+    {
+        return await( getLoadTask( gav, true, false ), gav );
     }
 
-    public Map<String, String> getRemoteDependencyVersionOverridesOld( String gav )
-        throws ArtifactResolutionException, ArtifactDescriptorException
+    /**
+     * Wait for a load task, running it in the calling thread unless it was already started in the background
+     */
+    private RemoteManagement await( FutureTask<RemoteManagement> task, String gav )
+        throws ArtifactResolutionException, ModelBuildingException
     {
-        ArtifactDescriptorResult descResult = resolveRemoteArtifactDescriptor( gav );
-        Map<String, String> versionOverrides = new HashMap<String, String>();
+        task.run();
 
-        for ( Dependency dep : descResult.getManagedDependencies() )
+        try
         {
-            Artifact artifact = dep.getArtifact();
-            String groupIdArtifactId = artifact.getGroupId() + ":" + artifact.getArtifactId();
-            String version = artifact.getVersion();
-            versionOverrides.put( groupIdArtifactId, version );
+            return task.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while loading remote POM " + gav, e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof ArtifactResolutionException )
+            {
+                throw (ArtifactResolutionException) cause;
+            }
+            if ( cause instanceof ModelBuildingException )
+            {
+                throw (ModelBuildingException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException( "Could not load remote POM " + gav, cause );
         }
-
-        return versionOverrides;
     }
 
-    public Map<String, String> getRemotePluginVersionOverrides( String gav )
-        throws ArtifactResolutionException, ArtifactDescriptorException, ModelBuildingException
+    /**
+     * Get the task which loads the management information of a GAV, creating it if this is the first request for it.
+     * A request for the dependency management uses the task of the complete management information if there is one.
+     * 
+     * @param gav The GAV of the remote POM
+     * @param dependencyManagement Whether only the dependency management is needed
+     * @param async Whether a newly created task should be started in the background
+     * @return The task, which may or may not have been started yet
+     */
+    private FutureTask<RemoteManagement> getLoadTask( final String gav, boolean dependencyManagement, boolean async )
+    {
+        // Only the descriptor can give the dependency management without the rest
+        final boolean dependenciesOnly =
+            dependencyManagement && ( strategy == RemoteStrategy.DESCRIPTOR || strategy == RemoteStrategy.AUTO );
+
+        FutureTask<RemoteManagement> task = remoteManagement.get( gav );
+        if ( task != null )
+        {
+            return task;
+        }
+        String key = dependenciesOnly ? gav + DEPENDENCY_MANAGEMENT_KEY : gav;
+        task = remoteManagement.get( key );
+        if ( task != null )
+        {
+            return task;
+        }
 
+        task = new FutureTask<RemoteManagement>( new Callable<RemoteManagement>()
+        {
+            @Override
+            public RemoteManagement call()
+                throws Exception
+            {
+                if ( dependenciesOnly )
+                {
+                    // The complete management may have been requested since this task was queued
+                    FutureTask<RemoteManagement> completeTask = remoteManagement.get( gav );
+                    if ( completeTask != null )
+                    {
+                        return await( completeTask, gav );
+                    }
+                }
+                return loadRemoteManagement( gav, dependenciesOnly );
+            }
+        } );
+
+        FutureTask<RemoteManagement> existingTask = remoteManagement.putIfAbsent( key, task );
+        if ( existingTask != null )
+        {
+            return existingTask;
+        }
+        if ( async )
+        {
+            loaderExecutor.execute( task );
+        }
+        return task;
+    }
+
+    /**
+     * Resolve a remote POM and extract its management information, either from the persistent cache or with the
+     * cheapest strategy allowed which gives the needed information.
+     * 
+     * @param gav The GAV of the remote POM
+     * @param dependenciesOnly Whether only the dependency management is needed
+     */
+    private RemoteManagement loadRemoteManagement( String gav, boolean dependenciesOnly )
+        throws ArtifactResolutionException, ModelBuildingException
     {
         logger.debug( "Resolving remote POM: " + gav );
 
         Artifact artifact = resolvePom( gav );
 
-        ModelResolver modelResolver = this.newModelResolver();
-
-        Model effectiveModel = buildModel( artifact.getFile(), modelResolver );
-
-        List<Plugin> plugins = effectiveModel.getBuild().getPluginManagement().getPlugins();
+        String cacheKey = computeCacheKey( artifact );
+        if ( cacheKey != null )
+        {
+            Map<String, String> dependencyVersions = overrideMapCache.get( gav, DEPENDENCY_OVERRIDES, cacheKey );
+            Map<String, String> pluginVersions = overrideMapCache.get( gav, PLUGIN_OVERRIDES, cacheKey );
+            if ( dependencyVersions != null && pluginVersions != null )
+            {
+                logger.debug( "Using cached management information of " + gav );
+                ExtensionMetrics.getInstance().count( ExtensionMetrics.CACHE_HITS, 1 );
+                return new RemoteManagement( gav, dependencyVersions, pluginVersions );
+            }
+            if ( dependenciesOnly && dependencyVersions != null )
+            {
+                logger.debug( "Using cached dependency management of " + gav );
+                ExtensionMetrics.getInstance().count( ExtensionMetrics.CACHE_HITS, 1 );
+                return new RemoteManagement( gav, dependencyVersions );
+            }
+        }
 
-        Map<String, String> versionOverrides = new HashMap<String, String>();
+        RemoteManagement management = null;
+        if ( strategy == RemoteStrategy.LEAN || strategy == RemoteStrategy.AUTO )
+        {
+            management = extractRemoteManagement( gav, artifact );
+        }
+        if ( management == null && dependenciesOnly
+            && ( strategy == RemoteStrategy.DESCRIPTOR || strategy == RemoteStrategy.AUTO ) )
+        {
+            management = readRemoteDependencyManagement( gav, artifact );
+        }
+        if ( management == null )
+        {
+            management = buildRemoteManagement( gav, artifact );
+        }
 
-        for ( Plugin plugin : plugins )
+        if ( cacheKey != null )
         {
-            String groupIdArtifactId = plugin.getGroupId() + ":" + plugin.getArtifactId();
-            versionOverrides.put( groupIdArtifactId, plugin.getVersion() );
+            overrideMapCache.put( gav, DEPENDENCY_OVERRIDES, cacheKey, management.getDependencyVersions() );
+            if ( management.isComplete() )
+            {
+                overrideMapCache.put( gav, PLUGIN_OVERRIDES, cacheKey, management.getPluginVersions() );
+            }
         }
 
-        return versionOverrides;
+        if ( management.isComplete() )
+        {
+            logger.debug( "Loaded " + management.getDependencyVersions().size() + " managed dependencies and "
+                + management.getPluginVersions().size() + " managed plugins from " + gav );
+        }
+        else
+        {
+            logger.debug( "Loaded " + management.getDependencyVersions().size() + " managed dependencies from " + gav );
+        }
 
+        return management;
     }
 
-    public ArtifactDescriptorResult resolveRemoteArtifactDescriptor( String gav )
-        throws ArtifactResolutionException, ArtifactDescriptorException
-
+    /**
+     * Compute the management information of a resolved remote POM without building its effective model
+     * 
+     * @return The management information, or null if the effective model needs to be built to compute it exactly
+     */
+    private RemoteManagement extractRemoteManagement( String gav, Artifact pomArtifact )
     {
-        logger.debug( "Resolving remote POM: " + gav );
+        LeanManagementExtractor extractor =
+            new LeanManagementExtractor( newModelResolver(), modelCache, sessionProperties.getSystemProperties(),
+                                         sessionProperties.getUserProperties() );
+        try
+        {
+            RemoteManagement management = extractor.extract( gav, new FileModelSource( pomArtifact.getFile() ) );
+            if ( management == null )
+            {
+                logger.debug( "Remote POM " + gav + " needs its effective model to be built" );
+            }
+            return management;
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Could not extract the management of " + gav + " without building its model: " + e );
+        }
+        catch ( UnresolvableModelException e )
+        {
+            logger.debug( "Could not extract the management of " + gav + " without building its model: " + e );
+        }
+        return null;
+    }
 
-        RepositorySystemSession repoSession = session.getRepositorySession();
+    /**
+     * Compute the management information of a resolved remote POM from its effective model
+     */
+    private RemoteManagement buildRemoteManagement( String gav, Artifact pomArtifact )
+        throws ModelBuildingException
+    {
+        ModelResolver modelResolver = this.newModelResolver();
 
-        Artifact artifact = new DefaultArtifact( gav );
+        Model effectiveModel = buildModel( pomArtifact.getFile(), modelResolver );
+        logger.debug( "Built model for project: " + effectiveModel.getName() );
 
-        ArtifactDescriptorRequest descRequest = new ArtifactDescriptorRequest();
-        descRequest.setArtifact( artifact );
-        descRequest.setRepositories( getRemoteRepositories() );
+        Map<String, String> dependencyVersions = new HashMap<String, String>();
+        if ( effectiveModel.getDependencyManagement() != null )
+        {
+            for ( org.apache.maven.model.Dependency dep : effectiveModel.getDependencyManagement().getDependencies() )
+            {
+                if ( dep.getVersion() != null )
+                {
+                    String groupIdArtifactId = dep.getGroupId() + ":" + dep.getArtifactId();
+                    dependencyVersions.put( groupIdArtifactId, dep.getVersion() );
+                }
+            }
+        }
 
-        ArtifactDescriptorResult descResult = repositorySystem.readArtifactDescriptor( repoSession, descRequest );
-        for ( Dependency dep : descResult.getManagedDependencies() )
+        // Managed plugins without a version, which only set configuration, have nothing to override
+        Map<String, String> pluginVersions = new HashMap<String, String>();
+        if ( effectiveModel.getBuild() != null && effectiveModel.getBuild().getPluginManagement() != null )
         {
-            logger.info( "Remote managed dep: " + dep );
+            for ( Plugin plugin : effectiveModel.getBuild().getPluginManagement().getPlugins() )
+            {
+                if ( plugin.getVersion() != null )
+                {
+                    String groupIdArtifactId = plugin.getGroupId() + ":" + plugin.getArtifactId();
+                    pluginVersions.put( groupIdArtifactId, plugin.getVersion() );
+                }
+            }
         }
 
-        System.out.println( artifact + " resolved to  " + artifact.getFile() );
+        return new RemoteManagement( gav, dependencyVersions, pluginVersions );
+    }
+
+    /**
+     * Compute the dependency management of a resolved remote POM from its artifact descriptor
+     * 
+     * @return The dependency management, or null if the descriptor can't be read or doesn't describe the POM itself
+     */
+    private RemoteManagement readRemoteDependencyManagement( String gav, Artifact pomArtifact )
+    {
+        ArtifactDescriptorRequest request = new ArtifactDescriptorRequest();
+        request.setArtifact( pomArtifact );
+        request.setRepositories( getRemoteRepositories() );
+
+        ArtifactDescriptorResult result;
+        TimerMetric timer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.REMOTE_RESOLUTION );
+        long start = timer.start();
+        try
+        {
+            result = repositorySystem.readArtifactDescriptor( session.getRepositorySession(), request );
+        }
+        catch ( ArtifactDescriptorException e )
+        {
+            logger.debug( "Could not read the artifact descriptor of " + gav + ": " + e );
+            return null;
+        }
+        finally
+        {
+            timer.stop( start );
+        }
+        if ( !result.getRelocations().isEmpty() )
+        {
+            // The descriptor is the one of the relocation target, the effective model is the one of the POM itself
+            logger.debug( "Remote POM " + gav + " is relocated to " + result.getArtifact() );
+            return null;
+        }
 
-        return descResult;
+        Map<String, String> dependencyVersions = new HashMap<String, String>();
+        for ( Dependency dependency : result.getManagedDependencies() )
+        {
+            Artifact artifact = dependency.getArtifact();
+            dependencyVersions.put( artifact.getGroupId() + ":" + artifact.getArtifactId(), artifact.getVersion() );
+        }
+        return new RemoteManagement( gav, dependencyVersions );
     }
 
     /**
-     * Get list of remote repositories from which to download artifacts
+     * Get list of remote repositories from which to download artifacts. Maven central is used by default, through its
+     * mirror, proxy and authentication from the settings of the session.
      * 
      * @return list of repositories
      */
-    private List<RemoteRepository> getRemoteRepositories()
+    private synchronized List<RemoteRepository> getRemoteRepositories()
     {
         if ( repositories == null )
         {
@@ -198,12 +593,42 @@ public class EffectiveModelBuilder
             repositories = new ArrayList<RemoteRepository>();
 
             String remoteRepoUrl = "http://repo1.maven.org/maven2/";
-            repositories.add( new RemoteRepository( "central", "default", remoteRepoUrl ) );
+            repositories.add( applySettings( new RemoteRepository( "central", "default", remoteRepoUrl ) ) );
         }
 
         return repositories;
     }
 
+    /**
+     * Replace a repository by its mirror, and set the proxy and the authentication to access it with
+     * 
+     * @param repository The repository
+     * @return The repository or its mirror
+     */
+    private RemoteRepository applySettings( RemoteRepository repository )
+    {
+        RepositorySystemSession repositorySession = session.getRepositorySession();
+        if ( repositorySession.getMirrorSelector() != null )
+        {
+            RemoteRepository mirror = repositorySession.getMirrorSelector().getMirror( repository );
+            if ( mirror != null )
+            {
+                logger.debug( "Using mirror " + mirror.getUrl() + " of " + repository.getUrl() );
+                repository = mirror;
+            }
+        }
+        if ( repositorySession.getProxySelector() != null )
+        {
+            repository.setProxy( repositorySession.getProxySelector().getProxy( repository ) );
+        }
+        AuthenticationSelector authenticationSelector = repositorySession.getAuthenticationSelector();
+        if ( authenticationSelector != null )
+        {
+            repository.setAuthentication( authenticationSelector.getAuthentication( repository ) );
+        }
+        return repository;
+    }
+
     /**
      * Build the effective model for the given pom file
      * 
@@ -219,24 +644,28 @@ public class EffectiveModelBuilder
         request.setModelResolver( modelResolver );
         request.setValidationLevel( ModelBuildingRequest.VALIDATION_LEVEL_MAVEN_3_0 );
         request.setTwoPhaseBuilding( false ); // Resolve the complete model in one step
-        request.setSystemProperties( System.getProperties() );
-        ModelBuildingResult result = modelBuilder.build( request );
+        request.setSystemProperties( sessionProperties.getSystemProperties() );
+        request.setUserProperties( sessionProperties.getUserProperties() );
+        request.setModelCache( modelCache );
+        TimerMetric timer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.MODEL_BUILDING );
+        long start = timer.start();
+        ModelBuildingResult result;
+        try
+        {
+            result = modelBuilder.build( request );
+        }
+        finally
+        {
+            timer.stop( start );
+            TraceRecorder.getInstance().record( "buildModel", "remote", start, "pom", pomFile.getPath() );
+        }
+        if ( logger.isDebugEnabled() )
+        {
+            logger.debug( "Model cache after building " + pomFile + ": " + modelCache );
+        }
         return result.getEffectiveModel();
     }
 
-    /**
-     * Get the default repository system from the current plexus container
-     * 
-     * @return RepositorySystem
-     * @throws ComponentLookupException
-     * @throws PlexusContainerException
-     */
-    private static RepositorySystem newRepositorySystem()
-        throws ComponentLookupException, PlexusContainerException
-    {
-        return new DefaultPlexusContainer().lookup( RepositorySystem.class );
-    }
-
     /**
      * Resolve the pom file for a given GAV
      * 
@@ -254,7 +683,16 @@ public class EffectiveModelBuilder
         String extension = "pom";
 
         Artifact artifact = new DefaultArtifact( groupId, artifactId, extension, version );
-        artifact = resolveArtifact( artifact );
+        long start = System.nanoTime();
+        try
+        {
+            artifact = resolveArtifact( artifact );
+        }
+        finally
+        {
+            TraceRecorder.getInstance().record( "resolvePom", "remote", start, "gav", gav );
+        }
+        ExtensionMetrics.getInstance().count( ExtensionMetrics.REMOTE_POMS_RESOLVED, 1 );
 
         return artifact;
     }
@@ -274,16 +712,67 @@ public class EffectiveModelBuilder
         request.setRepositories( getRemoteRepositories() );
 
         RepositorySystemSession repositorySession = session.getRepositorySession();
-        ArtifactResult result = resolver.resolveArtifact( repositorySession, request );
-        return result.getArtifact();
+        TimerMetric timer = ExtensionMetrics.getInstance().timer( ExtensionMetrics.REMOTE_RESOLUTION );
+        long start = timer.start();
+        try
+        {
+            ArtifactResult result = resolver.resolveArtifact( repositorySession, request );
+            return result.getArtifact();
+        }
+        finally
+        {
+            timer.stop( start );
+        }
+    }
+
+    /**
+     * Compute the persistent cache key of a resolved remote POM
+     * 
+     * @param pomArtifact The resolved POM
+     * @return The key, or null if the cache is disabled or the key couldn't be computed
+     */
+    private String computeCacheKey( Artifact pomArtifact )
+    {
+        if ( overrideMapCache == null )
+        {
+            return null;
+        }
+        try
+        {
+            return overrideMapCache.computeKey( pomArtifact.getFile(), newModelResolver(),
+                                                sessionProperties.getUserProperties(),
+                                                sessionProperties.getSystemProperties(), strategy );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Not using the override cache for " + pomArtifact + ": " + e );
+            return null;
+        }
     }
 
     private ModelResolver newModelResolver()
     {
-        RemoteRepositoryManager repoMgr = new DefaultRemoteRepositoryManager();
         ModelResolver modelResolver =
-            new BasicModelResolver( session.getRepositorySession(), resolver, repoMgr, getRemoteRepositories() );
+            new BasicModelResolver( session.getRepositorySession(), resolver, remoteRepositoryManager,
+                                    getRemoteRepositories() );
 
         return modelResolver;
     }
+
+    /**
+     * Creates daemon threads, so that pending background loads never keep the JVM alive
+     */
+    private static class LoaderThreadFactory
+        implements ThreadFactory
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "depmgmt-loader-" + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,624 @@
+package org.jboss.maven.extension.dependency.resolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jboss.maven.extension.dependency.util.VersionPropertyReader;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+
+/**
+ * Persistent cache of the override maps extracted from remote POMs. Entries are stored in the local repository and are
+ * keyed by the GAV of the remote POM plus the SHA-1 of everything the maps are computed from: the content of the POM,
+ * its parents and its import scoped POMs, the values of the session properties they use, and the strategy used to
+ * compute the maps. An entry is only used while none of those changed. Entries for SNAPSHOT POMs additionally expire
+ * after a configurable time.
+ * <p>
+ * Several builds may share one local repository, so entries are written to a temporary file which is renamed into
+ * place while holding a lock on the cache directory.
+ */
+public class OverrideMapCache
+{
+    private static final Logger logger = Logging.getLogger();
+
+    /**
+     * The name of the property which disables the cache when set to false. <br />
+     * ex: -DdepMgmt.cache=false
+     */
+    private static final String CACHE_ENABLED_PROPERTY = "depMgmt.cache";
+
+    /**
+     * The name of the property which sets the number of seconds after which cached SNAPSHOT entries expire. <br />
+     * ex: -DdepMgmt.cache.snapshotTtl=600
+     */
+    private static final String SNAPSHOT_TTL_PROPERTY = "depMgmt.cache.snapshotTtl";
+
+    private static final long DEFAULT_SNAPSHOT_TTL_SECONDS = 3600;
+
+    /**
+     * Directory of the cache, relative to the local repository
+     */
+    private static final String CACHE_PATH = ".cache" + File.separator + "maven-dependency-management-extension";
+
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    /**
+     * The maximum number of parents to follow when computing the key, guards against cyclic parent declarations
+     */
+    private static final int MAX_PARENT_DEPTH = 64;
+
+    private static final int MAX_INTERPOLATION_DEPTH = 16;
+
+    /**
+     * Expressions used in a POM, their value may come from the session properties
+     */
+    private static final Pattern EXPRESSION = Pattern.compile( "\\$\\{([^}]+)\\}" );
+
+    /**
+     * The system properties read by the jdk and os activations of profiles
+     */
+    private static final String[] JDK_PROPERTIES = { "java.version" };
+
+    private static final String[] OS_PROPERTIES = { "os.name", "os.arch", "os.version" };
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Guards the lock file against concurrent use from several threads of this JVM, which FileLock does not handle
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private final File cacheDir;
+
+    private final long snapshotTtlMillis;
+
+    /**
+     * Create a cache in the given local repository
+     * 
+     * @param localRepository Base directory of the local repository
+     * @param properties The properties of the session, which may set the TTL of SNAPSHOT entries
+     */
+    public OverrideMapCache( File localRepository, VersionPropertyReader properties )
+    {
+        this.cacheDir = new File( localRepository, CACHE_PATH );
+        this.snapshotTtlMillis = getSnapshotTtlSeconds( properties ) * 1000;
+    }
+
+    /**
+     * Check whether the cache was disabled by the user
+     * 
+     * @param properties The properties of the session
+     * @return true unless -DdepMgmt.cache=false was given
+     */
+    public static boolean isEnabled( VersionPropertyReader properties )
+    {
+        return !"false".equals( properties.getProperty( CACHE_ENABLED_PROPERTY ) );
+    }
+
+    /**
+     * Compute the cache key of a resolved POM, the SHA-1 of the content of the POM, its parents and its import scoped
+     * POMs, of the values of the session properties they reference or activate profiles with, and of the strategy.
+     * 
+     * @param pomFile The resolved POM
+     * @param modelResolver Resolver used to find the parent and import scoped POMs
+     * @param userProperties The user properties of the session
+     * @param systemProperties The system properties of the session
+     * @param strategy The strategy the override maps are computed with
+     * @return Hex encoded key
+     * @throws IOException If one of the POMs can't be read or resolved, or the coordinates of an import scoped POM
+     *             can't be interpolated
+     */
+    public String computeKey( File pomFile, ModelResolver modelResolver, Properties userProperties,
+                              Properties systemProperties, RemoteStrategy strategy )
+        throws IOException
+    {
+        MessageDigest digest = newDigest();
+        digest.update( strategy.name().getBytes( "UTF-8" ) );
+
+        Set<String> propertyNames = new TreeSet<String>();
+        digestLineage( readFully( new FileInputStream( pomFile ) ), modelResolver, userProperties, systemProperties,
+                       digest, propertyNames, new HashSet<String>() );
+
+        // User properties take precedence over system properties, like in the interpolation of the model
+        for ( String name : propertyNames )
+        {
+            String value = userProperties.getProperty( name );
+            if ( value == null )
+            {
+                value = systemProperties.getProperty( name );
+            }
+            digest.update( ( value != null ? name + "=" + value : name ).getBytes( "UTF-8" ) );
+            digest.update( (byte) 0 );
+        }
+
+        return toHex( digest.digest() );
+    }
+
+    /**
+     * Add a POM and its parents to the digest, followed by its import scoped POMs
+     * 
+     * @param content The content of the POM
+     * @param propertyNames Collects the names of the properties the POMs may read from the session
+     * @param importedIds The ids of the import scoped POMs added so far, guards against import cycles
+     */
+    private void digestLineage( byte[] content, ModelResolver modelResolver, Properties userProperties,
+                                Properties systemProperties, MessageDigest digest, Set<String> propertyNames,
+                                Set<String> importedIds )
+        throws IOException
+    {
+        MavenXpp3Reader reader = new MavenXpp3Reader();
+
+        List<Model> lineage = new ArrayList<Model>();
+        for ( int depth = 0; content != null && depth < MAX_PARENT_DEPTH; depth++ )
+        {
+            digest.update( content );
+            addPropertyNames( new String( content, "UTF-8" ), propertyNames );
+
+            Model model;
+            try
+            {
+                model = reader.read( new ByteArrayInputStream( content ), false );
+            }
+            catch ( XmlPullParserException e )
+            {
+                throw new IOException( "Could not parse POM while computing cache key", e );
+            }
+            lineage.add( model );
+            for ( Profile profile : model.getProfiles() )
+            {
+                addActivationPropertyNames( profile.getActivation(), propertyNames );
+            }
+
+            content = null;
+            Parent parent = model.getParent();
+            if ( parent != null )
+            {
+                content = readModel( modelResolver, parent.getGroupId(), parent.getArtifactId(), parent.getVersion() );
+            }
+        }
+
+        // The import scoped POMs of the lineage and of all its profiles. Which profiles are active isn't evaluated, so
+        // the coordinates are interpolated with the properties of the lineage, and again with the properties of each
+        // profile on top of them. Every POM which may be imported is added.
+        Properties modelProperties = new Properties();
+        for ( int i = lineage.size() - 1; i >= 0; i-- )
+        {
+            modelProperties.putAll( lineage.get( i ).getProperties() );
+        }
+        List<Properties> candidateProperties = new ArrayList<Properties>();
+        candidateProperties.add( modelProperties );
+        List<Dependency> imports = new ArrayList<Dependency>();
+        for ( Model ancestor : lineage )
+        {
+            addImports( ancestor.getDependencyManagement(), imports );
+            for ( Profile profile : ancestor.getProfiles() )
+            {
+                addImports( profile.getDependencyManagement(), imports );
+                if ( !profile.getProperties().isEmpty() )
+                {
+                    Properties profileProperties = new Properties();
+                    profileProperties.putAll( modelProperties );
+                    profileProperties.putAll( profile.getProperties() );
+                    candidateProperties.add( profileProperties );
+                }
+            }
+        }
+
+        Model model = lineage.get( 0 );
+        for ( Dependency importPom : imports )
+        {
+            for ( Properties properties : candidateProperties )
+            {
+                Interpolator interpolator = new Interpolator( model, properties, userProperties, systemProperties );
+                String groupId = interpolator.interpolate( importPom.getGroupId() );
+                String artifactId = interpolator.interpolate( importPom.getArtifactId() );
+                String version = interpolator.interpolate( importPom.getVersion() );
+                String importId = groupId + ":" + artifactId + ":" + version;
+                if ( importId.contains( "${" ) )
+                {
+                    throw new IOException( "Could not interpolate the import scoped POM " + importId );
+                }
+                if ( importedIds.add( importId ) )
+                {
+                    digestLineage( readModel( modelResolver, groupId, artifactId, version ), modelResolver.newCopy(),
+                                   userProperties, systemProperties, digest, propertyNames, importedIds );
+                }
+            }
+        }
+    }
+
+    private static byte[] readModel( ModelResolver modelResolver, String groupId, String artifactId, String version )
+        throws IOException
+    {
+        try
+        {
+            return readFully( modelResolver.resolveModel( groupId, artifactId, version ).getInputStream() );
+        }
+        catch ( UnresolvableModelException e )
+        {
+            throw new IOException( "Could not resolve " + groupId + ":" + artifactId + ":" + version, e );
+        }
+    }
+
+    private static void addImports( DependencyManagement dependencyManagement, List<Dependency> imports )
+    {
+        if ( dependencyManagement != null )
+        {
+            for ( Dependency dependency : dependencyManagement.getDependencies() )
+            {
+                if ( "import".equals( dependency.getScope() ) && "pom".equals( dependency.getType() ) )
+                {
+                    imports.add( dependency );
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect the names of the expressions used in the content of a POM
+     */
+    private static void addPropertyNames( String content, Set<String> propertyNames )
+    {
+        Matcher matcher = EXPRESSION.matcher( content );
+        while ( matcher.find() )
+        {
+            propertyNames.add( matcher.group( 1 ) );
+        }
+    }
+
+    /**
+     * Collect the names of the properties a profile activation reads from the session
+     */
+    private static void addActivationPropertyNames( Activation activation, Set<String> propertyNames )
+    {
+        if ( activation == null )
+        {
+            return;
+        }
+        if ( activation.getProperty() != null && activation.getProperty().getName() != null )
+        {
+            String name = activation.getProperty().getName();
+            propertyNames.add( name.startsWith( "!" ) ? name.substring( 1 ) : name );
+        }
+        if ( activation.getJdk() != null )
+        {
+            for ( String name : JDK_PROPERTIES )
+            {
+                propertyNames.add( name );
+            }
+        }
+        if ( activation.getOs() != null )
+        {
+            for ( String name : OS_PROPERTIES )
+            {
+                propertyNames.add( name );
+            }
+        }
+    }
+
+
+    /**
+     * Look up a cached override map.
+     * 
+     * @param gav GAV of the remote POM the map was extracted from
+     * @param kind Kind of overrides, e.g. "dependency" or "plugin"
+     * @param key Key computed by computeKey()
+     * @return The cached map, or null if there is no usable entry
+     */
+    public Map<String, String> get( String gav, String kind, String key )
+    {
+        File entryFile = getEntryFile( gav, kind, key );
+        if ( !entryFile.isFile() )
+        {
+            return null;
+        }
+        if ( isSnapshot( gav ) && System.currentTimeMillis() - entryFile.lastModified() > snapshotTtlMillis )
+        {
+            logger.debug( "Cached " + kind + " overrides of " + gav + " expired" );
+            return null;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( entryFile );
+            properties.load( in );
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Could not read cached " + kind + " overrides of " + gav + ": " + e );
+            return null;
+        }
+        finally
+        {
+            close( in );
+        }
+
+        Map<String, String> overrides = new HashMap<String, String>( properties.size() * 4 / 3 + 1 );
+        for ( String groupIdArtifactId : properties.stringPropertyNames() )
+        {
+            overrides.put( groupIdArtifactId, properties.getProperty( groupIdArtifactId ) );
+        }
+        return overrides;
+    }
+
+    /**
+     * Store an override map. Failures are logged and otherwise ignored, the cache is only an optimization.
+     * 
+     * @param gav GAV of the remote POM the map was extracted from
+     * @param kind Kind of overrides, e.g. "dependency" or "plugin"
+     * @param key Key computed by computeKey()
+     * @param overrides The map to store
+     */
+    public void put( String gav, String kind, String key, Map<String, String> overrides )
+    {
+        File entryFile = getEntryFile( gav, kind, key );
+        File entryDir = entryFile.getParentFile();
+
+        // Properties can't hold null values, and an override to no version means nothing
+        Properties properties = new Properties();
+        for ( Map.Entry<String, String> override : overrides.entrySet() )
+        {
+            if ( override.getValue() != null )
+            {
+                properties.setProperty( override.getKey(), override.getValue() );
+            }
+        }
+
+        synchronized ( JVM_LOCK )
+        {
+            RandomAccessFile lockFile = null;
+            FileLock lock = null;
+            File tempFile = null;
+            try
+            {
+                entryDir.mkdirs();
+                lockFile = new RandomAccessFile( new File( cacheDir, LOCK_FILE_NAME ), "rw" );
+                lock = lockFile.getChannel().lock();
+
+                tempFile = File.createTempFile( kind, ".tmp", entryDir );
+                OutputStream out = new FileOutputStream( tempFile );
+                try
+                {
+                    properties.store( out, kind + " overrides of " + gav );
+                }
+                finally
+                {
+                    out.close();
+                }
+
+                // Rename can't replace an existing file on every platform
+                if ( entryFile.exists() && !entryFile.delete() )
+                {
+                    throw new IOException( "Could not replace " + entryFile );
+                }
+                if ( !tempFile.renameTo( entryFile ) )
+                {
+                    throw new IOException( "Could not rename " + tempFile + " to " + entryFile );
+                }
+                tempFile = null;
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Could not cache " + kind + " overrides of " + gav + ": " + e );
+            }
+            finally
+            {
+                if ( tempFile != null )
+                {
+                    tempFile.delete();
+                }
+                if ( lock != null )
+                {
+                    try
+                    {
+                        lock.release();
+                    }
+                    catch ( IOException e )
+                    {
+                        logger.debug( "Could not release cache lock: " + e );
+                    }
+                }
+                close( lockFile );
+            }
+        }
+    }
+
+    private File getEntryFile( String gav, String kind, String key )
+    {
+        String[] gavParts = gav.split( ":" );
+        File dir = cacheDir;
+        for ( String part : gavParts )
+        {
+            dir = new File( dir, part );
+        }
+        return new File( dir, kind + "-" + key + ".properties" );
+    }
+
+    private static boolean isSnapshot( String gav )
+    {
+        return gav.endsWith( "SNAPSHOT" );
+    }
+
+    private static long getSnapshotTtlSeconds( VersionPropertyReader properties )
+    {
+        String ttl = properties.getProperty( SNAPSHOT_TTL_PROPERTY );
+        if ( ttl != null )
+        {
+            try
+            {
+                return Long.parseLong( ttl.trim() );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warn( "Ignoring invalid " + SNAPSHOT_TTL_PROPERTY + " value '" + ttl + "'" );
+            }
+        }
+        return DEFAULT_SNAPSHOT_TTL_SECONDS;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance( "SHA-1" );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-1 is not supported by this JVM", e );
+        }
+    }
+
+    private static byte[] readFully( InputStream in )
+        throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( ( read = in.read( buffer ) ) >= 0 )
+            {
+                out.write( buffer, 0, read );
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        char[] hex = new char[bytes.length * 2];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            hex[i * 2] = HEX_DIGITS[( bytes[i] >> 4 ) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String( hex );
+    }
+
+    /**
+     * Interpolates the coordinates of import scoped POMs in the order of the model interpolation: the coordinates of
+     * the model, user properties, model properties and system properties. Expressions which can't be resolved are left
+     * in place.
+     */
+    private static class Interpolator
+    {
+        private final Map<String, String> modelFields = new HashMap<String, String>();
+
+        private final Properties modelProperties;
+
+        private final Properties userProperties;
+
+        private final Properties systemProperties;
+
+        Interpolator( Model model, Properties modelProperties, Properties userProperties,
+                      Properties systemProperties )
+        {
+            Parent parent = model.getParent();
+            String groupId = model.getGroupId() != null || parent == null ? model.getGroupId() : parent.getGroupId();
+            String version = model.getVersion() != null || parent == null ? model.getVersion() : parent.getVersion();
+            for ( String prefix : new String[] { "project.", "pom." } )
+            {
+                modelFields.put( prefix + "groupId", groupId );
+                modelFields.put( prefix + "artifactId", model.getArtifactId() );
+                modelFields.put( prefix + "version", version );
+            }
+            this.modelProperties = modelProperties;
+            this.userProperties = userProperties;
+            this.systemProperties = systemProperties;
+        }
+
+        String interpolate( String value )
+        {
+            return interpolate( value, 0 );
+        }
+
+        private String interpolate( String value, int depth )
+        {
+            if ( value == null || depth > MAX_INTERPOLATION_DEPTH || !value.contains( "${" ) )
+            {
+                return value;
+            }
+
+            StringBuffer result = new StringBuffer();
+            Matcher matcher = EXPRESSION.matcher( value );
+            while ( matcher.find() )
+            {
+                String resolved = resolve( matcher.group( 1 ) );
+                String replacement = resolved != null ? interpolate( resolved, depth + 1 ) : matcher.group();
+                matcher.appendReplacement( result, Matcher.quoteReplacement( replacement ) );
+            }
+            matcher.appendTail( result );
+            return result.toString();
+        }
+
+        private String resolve( String expression )
+        {
+            String value = modelFields.get( expression );
+            if ( value == null )
+            {
+                value = userProperties.getProperty( expression );
+            }
+            if ( value == null )
+            {
+                value = modelProperties.getProperty( expression );
+            }
+            if ( value == null )
+            {
+                value = systemProperties.getProperty( expression );
+            }
+            return value;
+        }
+    }
+
+    private static void close( Closeable closeable )
+    {
+        if ( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch ( IOException e )
+            {
+                // ignore
+            }
+        }
+    }
+}
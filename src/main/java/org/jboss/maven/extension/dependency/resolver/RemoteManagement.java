@@ -0,0 +1,72 @@
+package org.jboss.maven.extension.dependency.resolver;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The management information extracted from the effective model of a remote POM. Instances are immutable, so one
+ * instance can be shared by all the modifiers which use the same remote POM. An instance loaded only for its
+ * dependency management is not complete, its plugin versions are empty.
+ */
+public class RemoteManagement
+{
+    private final String gav;
+
+    private final Map<String, String> dependencyVersions;
+
+    private final Map<String, String> pluginVersions;
+
+    private final boolean complete;
+
+    public RemoteManagement( String gav, Map<String, String> dependencyVersions, Map<String, String> pluginVersions )
+    {
+        this.gav = gav;
+        this.dependencyVersions = Collections.unmodifiableMap( dependencyVersions );
+        this.pluginVersions = Collections.unmodifiableMap( pluginVersions );
+        this.complete = true;
+    }
+
+    /**
+     * Create an instance which only holds the dependency management of a remote POM
+     */
+    public RemoteManagement( String gav, Map<String, String> dependencyVersions )
+    {
+        this.gav = gav;
+        this.dependencyVersions = Collections.unmodifiableMap( dependencyVersions );
+        this.pluginVersions = Collections.emptyMap();
+        this.complete = false;
+    }
+
+    /**
+     * @return The GAV of the remote POM
+     */
+    public String getGav()
+    {
+        return gav;
+    }
+
+    /**
+     * @return Map between the GA of each managed dependency and its version
+     */
+    public Map<String, String> getDependencyVersions()
+    {
+        return dependencyVersions;
+    }
+
+    /**
+     * @return Map between the GA of each managed plugin and its version
+     */
+    public Map<String, String> getPluginVersions()
+    {
+        return pluginVersions;
+    }
+
+    /**
+     * @return False if only the dependency management of the remote POM was loaded
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+}
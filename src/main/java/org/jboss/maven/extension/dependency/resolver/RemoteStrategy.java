@@ -0,0 +1,60 @@
+package org.jboss.maven.extension.dependency.resolver;
+
+import java.util.Locale;
+
+/**
+ * The ways the management information of a remote POM can be computed
+ */
+public enum RemoteStrategy
+{
+    /**
+     * Build the complete effective model of the remote POM
+     */
+    MODEL,
+
+    /**
+     * Only read the parts of the POM and its parents needed for the managed versions, falling back to MODEL when
+     * that can't produce the same result
+     */
+    LEAN,
+
+    /**
+     * Read the artifact descriptor of the POM through the repository system, which caches descriptors for the whole
+     * session. Only provides the dependency management, MODEL is used when the plugin management is needed or the POM
+     * is relocated.
+     */
+    DESCRIPTOR,
+
+    /**
+     * Use the cheapest strategy which gives the same result as MODEL: LEAN when possible, then DESCRIPTOR when only
+     * the dependency management is needed, and MODEL otherwise.
+     */
+    AUTO;
+
+    /**
+     * The name of the property which selects the strategy. <br />
+     * ex: -DdepMgmt.remoteStrategy=model
+     */
+    public static final String STRATEGY_PROPERTY = "depMgmt.remoteStrategy";
+
+    /**
+     * Get the strategy selected by the user
+     * 
+     * @param value Value of the strategy property, may be null
+     * @return The selected strategy, AUTO if none or an unknown one was selected
+     */
+    public static RemoteStrategy fromProperty( String value )
+    {
+        if ( value != null )
+        {
+            for ( RemoteStrategy strategy : values() )
+            {
+                if ( strategy.name().equals( value.trim().toUpperCase( Locale.ENGLISH ) ) )
+                {
+                    return strategy;
+                }
+            }
+        }
+        return AUTO;
+    }
+}
@@ -0,0 +1,589 @@
+package org.jboss.maven.extension.dependency.resolver.lean;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.building.ModelBuilder;
+import org.apache.maven.model.building.ModelCache;
+import org.apache.maven.model.building.ModelSource;
+import org.apache.maven.model.resolution.InvalidRepositoryException;
+import org.apache.maven.model.resolution.ModelResolver;
+import org.apache.maven.model.resolution.UnresolvableModelException;
+import org.jboss.maven.extension.dependency.resolver.RemoteManagement;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.ManagedDependency;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.ManagedPlugin;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.Profile;
+
+/**
+ * Computes the managed versions of a remote POM without building its effective model. Only the parent chain, the
+ * super POM and import scoped POMs are resolved, and only the elements needed for the managed version table are kept
+ * while reading them. Inheritance, interpolation and imports follow the rules of the maven model builder.
+ * <p>
+ * When a POM uses something this extractor can't evaluate exactly, like a profile activation it can't evaluate, an
+ * expression it can't interpolate in the managed versions, or a managed dependency without a version, no result is
+ * returned and the caller should fall back to building the effective model.
+ */
+public class LeanManagementExtractor
+{
+    /**
+     * Tag used for the lean POMs in the model cache, distinct from the tags used by the model builder
+     */
+    private static final String CACHE_TAG = "lean";
+
+    private static final int MAX_PARENT_DEPTH = 64;
+
+    private static final int MAX_INTERPOLATION_DEPTH = 16;
+
+    private static final String[] PROJECT_PREFIXES = { "project.", "pom." };
+
+    /**
+     * Location of the super POM of the running maven, every lineage ends with it
+     */
+    private static final String SUPER_POM_RESOURCE = "org/apache/maven/model/pom-4.0.0.xml";
+
+    private static LeanPom superPom;
+
+    private final ModelResolver modelResolver;
+
+    private final ModelCache modelCache;
+
+    private final Properties systemProperties;
+
+    private final Properties userProperties;
+
+    /**
+     * @param modelResolver Resolver for parent and import scoped POMs, the repositories of the POMs are added to it
+     * @param modelCache Cache for the lean POMs, may be null
+     * @param systemProperties System properties used for interpolation
+     * @param userProperties User properties used for interpolation, they take precedence over model properties
+     */
+    public LeanManagementExtractor( ModelResolver modelResolver, ModelCache modelCache, Properties systemProperties,
+                                    Properties userProperties )
+    {
+        this.modelResolver = modelResolver;
+        this.modelCache = modelCache;
+        this.systemProperties = systemProperties;
+        this.userProperties = userProperties;
+    }
+
+    /**
+     * Compute the managed versions of a POM
+     * 
+     * @param gav GAV of the POM
+     * @param pomSource The POM
+     * @return The management information, or null if it can't be computed exactly without building the model
+     * @throws IOException If one of the POMs can't be read
+     * @throws UnresolvableModelException If a parent or import scoped POM can't be resolved
+     */
+    public RemoteManagement extract( String gav, ModelSource pomSource )
+        throws IOException, UnresolvableModelException
+    {
+        Management management =
+            extract( LeanPomReader.read( pomSource.getInputStream() ), modelResolver, true, new HashSet<String>() );
+        if ( management == null )
+        {
+            return null;
+        }
+
+        Map<String, String> dependencyVersions = new HashMap<String, String>();
+        for ( ManagedDependency dependency : management.dependencies.values() )
+        {
+            dependencyVersions.put( dependency.groupId + ":" + dependency.artifactId, dependency.version );
+        }
+
+        // Managed plugins without a version, which only set configuration, have nothing to override
+        Map<String, String> pluginVersions = new HashMap<String, String>();
+        for ( ManagedPlugin plugin : management.plugins.values() )
+        {
+            if ( plugin.version != null )
+            {
+                pluginVersions.put( plugin.groupId + ":" + plugin.artifactId, plugin.version );
+            }
+        }
+
+        return new RemoteManagement( gav, dependencyVersions, pluginVersions );
+    }
+
+    /**
+     * Compute the interpolated management of a POM, including the management inherited from its parents and imported
+     * from import scoped POMs.
+     * 
+     * @param pom The POM
+     * @param resolver Resolver for the parents and imports of the POM, which gets the repositories of its lineage
+     * @param hasProjectDirectory Whether the POM has a project directory for the file activation of its profiles. Like
+     *            the model builder, the whole lineage uses the directory of the POM, and import scoped POMs have none.
+     * @param importStack Ids of the POMs currently being imported, guards against import cycles
+     * @return The management, or null if it can't be computed exactly
+     */
+    private Management extract( LeanPom pom, ModelResolver resolver, boolean hasProjectDirectory,
+                                Set<String> importStack )
+        throws IOException, UnresolvableModelException
+    {
+        // The chain from the POM up to its root ancestor
+        List<LeanPom> lineage = new ArrayList<LeanPom>();
+        lineage.add( pom );
+        addRepositories( pom, resolver );
+        LeanPom current = pom;
+        while ( current.hasParent() )
+        {
+            if ( lineage.size() > MAX_PARENT_DEPTH )
+            {
+                return null;
+            }
+            current = resolve( current.parentGroupId, current.parentArtifactId, current.parentVersion, resolver );
+            addRepositories( current, resolver );
+            lineage.add( current );
+        }
+        LeanPom superPom = getSuperPom();
+        if ( superPom == null )
+        {
+            return null;
+        }
+        lineage.add( superPom );
+
+        // Active profiles are injected into their POM before inheritance, like the model builder does
+        List<LeanPom> activeLineage = new ArrayList<LeanPom>( lineage.size() );
+        for ( LeanPom ancestor : lineage )
+        {
+            LeanPom active = injectActiveProfiles( ancestor, hasProjectDirectory );
+            if ( active == null )
+            {
+                return null;
+            }
+            activeLineage.add( active );
+        }
+
+        // Inheritance: the child wins, parent entries which are not overridden are appended. Plugins are merged field
+        // by field, so a child plugin without a version inherits the version of its parent.
+        Management management = new Management();
+        for ( LeanPom ancestor : activeLineage )
+        {
+            for ( ManagedDependency dependency : ancestor.managedDependencies )
+            {
+                String key = dependency.getManagementKey();
+                if ( !management.dependencies.containsKey( key ) )
+                {
+                    management.dependencies.put( key, dependency );
+                }
+            }
+            for ( ManagedPlugin plugin : ancestor.managedPlugins )
+            {
+                if ( ancestor != activeLineage.get( 0 ) && !plugin.inherited )
+                {
+                    continue;
+                }
+                mergePlugin( management.plugins, plugin );
+            }
+        }
+        for ( int i = activeLineage.size() - 1; i >= 0; i-- )
+        {
+            management.properties.putAll( activeLineage.get( i ).properties );
+        }
+
+        // Interpolation uses the coordinates of the child, even for inherited values. Only the properties referenced by
+        // the management are interpolated, the others don't change the result.
+        Interpolator interpolator = new Interpolator( pom, management.properties );
+
+        Map<String, ManagedDependency> dependencies = new LinkedHashMap<String, ManagedDependency>();
+        List<ManagedDependency> imports = new ArrayList<ManagedDependency>();
+        for ( ManagedDependency raw : management.dependencies.values() )
+        {
+            ManagedDependency dependency = new ManagedDependency();
+            dependency.groupId = interpolator.interpolate( raw.groupId );
+            dependency.artifactId = interpolator.interpolate( raw.artifactId );
+            dependency.version = interpolator.interpolate( raw.version );
+            dependency.type = interpolator.interpolate( raw.type );
+            dependency.classifier = interpolator.interpolate( raw.classifier );
+            dependency.scope = interpolator.interpolate( raw.scope );
+            if ( isUninterpolated( dependency.groupId ) || isUninterpolated( dependency.artifactId )
+                || isUninterpolated( dependency.version ) || isUninterpolated( dependency.type ) )
+            {
+                return null;
+            }
+            if ( dependency.version == null )
+            {
+                // The model builder rejects a managed dependency without a version, let it report the error
+                return null;
+            }
+
+            // Import scoped POMs are replaced by their dependency management, like the model builder does
+            if ( "import".equals( dependency.scope ) && "pom".equals( dependency.type ) )
+            {
+                imports.add( dependency );
+            }
+            else
+            {
+                dependencies.put( dependency.getManagementKey(), dependency );
+            }
+        }
+
+        // Each import gets its own copy of the resolver, the repositories of its lineage don't leak into the importer
+        for ( ManagedDependency importPom : imports )
+        {
+            String importId = importPom.groupId + ":" + importPom.artifactId + ":" + importPom.version;
+            if ( !importStack.add( importId ) )
+            {
+                return null;
+            }
+            LeanPom imported = resolve( importPom.groupId, importPom.artifactId, importPom.version, resolver );
+            Management importedManagement = extract( imported, resolver.newCopy(), false, importStack );
+            importStack.remove( importId );
+            if ( importedManagement == null )
+            {
+                return null;
+            }
+            for ( Map.Entry<String, ManagedDependency> entry : importedManagement.dependencies.entrySet() )
+            {
+                if ( !dependencies.containsKey( entry.getKey() ) )
+                {
+                    dependencies.put( entry.getKey(), entry.getValue() );
+                }
+            }
+        }
+        management.dependencies = dependencies;
+
+        Map<String, ManagedPlugin> plugins = new LinkedHashMap<String, ManagedPlugin>();
+        for ( ManagedPlugin raw : management.plugins.values() )
+        {
+            ManagedPlugin plugin = new ManagedPlugin();
+            plugin.groupId = interpolator.interpolate( raw.groupId );
+            plugin.artifactId = interpolator.interpolate( raw.artifactId );
+            plugin.version = interpolator.interpolate( raw.version );
+            if ( isUninterpolated( plugin.groupId ) || isUninterpolated( plugin.artifactId )
+                || isUninterpolated( plugin.version ) )
+            {
+                return null;
+            }
+            plugins.put( plugin.getKey(), plugin );
+        }
+        management.plugins = plugins;
+
+        return management;
+    }
+
+    private LeanPom resolve( String groupId, String artifactId, String version, ModelResolver resolver )
+        throws IOException, UnresolvableModelException
+    {
+        if ( modelCache != null )
+        {
+            LeanPom cached = (LeanPom) modelCache.get( groupId, artifactId, version, CACHE_TAG );
+            if ( cached != null )
+            {
+                return cached;
+            }
+        }
+
+        ModelSource source = resolver.resolveModel( groupId, artifactId, version );
+        LeanPom pom = LeanPomReader.read( source.getInputStream() );
+
+        if ( modelCache != null )
+        {
+            modelCache.put( groupId, artifactId, version, CACHE_TAG, pom );
+        }
+        return pom;
+    }
+
+    /**
+     * Read the super POM provided by the model builder of the running maven
+     * 
+     * @return The super POM, or null if it can't be found
+     */
+    private static synchronized LeanPom getSuperPom()
+        throws IOException
+    {
+        if ( superPom == null )
+        {
+            InputStream in = ModelBuilder.class.getClassLoader().getResourceAsStream( SUPER_POM_RESOURCE );
+            if ( in == null )
+            {
+                return null;
+            }
+            superPom = LeanPomReader.read( in );
+        }
+        return superPom;
+    }
+
+    private static void addRepositories( LeanPom pom, ModelResolver resolver )
+        throws UnresolvableModelException
+    {
+        for ( Repository repository : pom.repositories )
+        {
+            try
+            {
+                resolver.addRepository( repository );
+            }
+            catch ( InvalidRepositoryException e )
+            {
+                throw new UnresolvableModelException( e.getMessage(), pom.groupId, pom.artifactId, pom.version, e );
+            }
+        }
+    }
+
+    /**
+     * Get a POM with the management of its active profiles injected. Cached POMs are shared, so they are never
+     * modified.
+     * 
+     * @return The POM itself if none of its profiles is active, or null if the activation of a profile can't be
+     *         evaluated
+     */
+    private LeanPom injectActiveProfiles( LeanPom pom, boolean hasProjectDirectory )
+    {
+        LeanPom result = pom;
+        for ( Profile profile : pom.managementProfiles )
+        {
+            if ( !profile.evaluable )
+            {
+                return null;
+            }
+            if ( !isActive( profile, hasProjectDirectory ) )
+            {
+                continue;
+            }
+            if ( result == pom )
+            {
+                result = new LeanPom();
+                result.groupId = pom.groupId;
+                result.artifactId = pom.artifactId;
+                result.version = pom.version;
+                result.packaging = pom.packaging;
+                result.parentGroupId = pom.parentGroupId;
+                result.parentArtifactId = pom.parentArtifactId;
+                result.parentVersion = pom.parentVersion;
+                result.properties.putAll( pom.properties );
+                result.managedDependencies.addAll( pom.managedDependencies );
+                result.managedPlugins.addAll( pom.managedPlugins );
+            }
+
+            // The profile wins over the POM
+            result.properties.putAll( profile.properties );
+
+            Map<String, ManagedDependency> dependencies = new LinkedHashMap<String, ManagedDependency>();
+            for ( ManagedDependency dependency : profile.managedDependencies )
+            {
+                dependencies.put( dependency.getManagementKey(), dependency );
+            }
+            for ( ManagedDependency dependency : result.managedDependencies )
+            {
+                if ( !dependencies.containsKey( dependency.getManagementKey() ) )
+                {
+                    dependencies.put( dependency.getManagementKey(), dependency );
+                }
+            }
+            result.managedDependencies.clear();
+            result.managedDependencies.addAll( dependencies.values() );
+
+            Map<String, ManagedPlugin> plugins = new LinkedHashMap<String, ManagedPlugin>();
+            for ( ManagedPlugin plugin : profile.managedPlugins )
+            {
+                mergePlugin( plugins, plugin );
+            }
+            for ( ManagedPlugin plugin : result.managedPlugins )
+            {
+                mergePlugin( plugins, plugin );
+            }
+            result.managedPlugins.clear();
+            result.managedPlugins.addAll( plugins.values() );
+        }
+        return result;
+    }
+
+    /**
+     * Add a plugin to the plugins merged so far, which take precedence. A plugin already merged without a version
+     * gets the version of the added plugin.
+     */
+    private static void mergePlugin( Map<String, ManagedPlugin> plugins, ManagedPlugin plugin )
+    {
+        String key = plugin.getKey();
+        ManagedPlugin existing = plugins.get( key );
+        if ( existing == null )
+        {
+            plugins.put( key, plugin );
+        }
+        else if ( existing.version == null && plugin.version != null )
+        {
+            ManagedPlugin merged = new ManagedPlugin();
+            merged.groupId = existing.groupId;
+            merged.artifactId = existing.artifactId;
+            merged.version = plugin.version;
+            merged.inherited = existing.inherited;
+            plugins.put( key, merged );
+        }
+    }
+
+    /**
+     * Evaluate a profile activation the way the profile selector of maven does, the profile is active when any of
+     * its conditions is met.
+     */
+    private boolean isActive( Profile profile, boolean hasProjectDirectory )
+    {
+        // The project directory of a resolved POM always exists. Without one, the file activator of maven 3.0 never
+        // activates a profile on ${basedir}, whether it checks that it exists or that it's missing.
+        if ( hasProjectDirectory && profile.basedirExists != null && profile.basedirExists.booleanValue() )
+        {
+            return true;
+        }
+
+        String name = profile.propertyName;
+        if ( name == null || name.length() == 0 )
+        {
+            return false;
+        }
+        boolean reverseName = name.startsWith( "!" );
+        if ( reverseName )
+        {
+            name = name.substring( 1 );
+        }
+
+        String actualValue = userProperties.getProperty( name );
+        if ( actualValue == null )
+        {
+            actualValue = systemProperties.getProperty( name );
+        }
+
+        String expectedValue = profile.propertyValue;
+        if ( expectedValue != null && expectedValue.length() > 0 )
+        {
+            boolean reverseValue = expectedValue.startsWith( "!" );
+            if ( reverseValue )
+            {
+                expectedValue = expectedValue.substring( 1 );
+            }
+            boolean result = expectedValue.equals( actualValue );
+            return reverseValue ? !result : result;
+        }
+
+        boolean result = actualValue != null && actualValue.length() > 0;
+        return reverseName ? !result : result;
+    }
+
+    private static boolean isUninterpolated( String value )
+    {
+        return value != null && value.contains( "${" );
+    }
+
+    /**
+     * The intermediate management of a POM, keyed like the model builder keys managed dependencies and plugins
+     */
+    private static class Management
+    {
+        Map<String, ManagedDependency> dependencies = new LinkedHashMap<String, ManagedDependency>();
+
+        Map<String, ManagedPlugin> plugins = new LinkedHashMap<String, ManagedPlugin>();
+
+        Properties properties = new Properties();
+    }
+
+    /**
+     * Interpolates expressions in the order used by the model builder: model fields with a project prefix, user
+     * properties, model properties, system properties and finally model fields without prefix.
+     */
+    private class Interpolator
+    {
+        private final Map<String, String> modelFields;
+
+        private final Properties modelProperties;
+
+        Interpolator( LeanPom pom, Properties modelProperties )
+        {
+            this.modelProperties = modelProperties;
+
+            Map<String, String> fields = new HashMap<String, String>();
+            fields.put( "groupId", pom.groupId != null ? pom.groupId : pom.parentGroupId );
+            fields.put( "artifactId", pom.artifactId );
+            fields.put( "version", pom.version != null ? pom.version : pom.parentVersion );
+            fields.put( "packaging", pom.packaging );
+            fields.put( "parent.groupId", pom.parentGroupId );
+            fields.put( "parent.artifactId", pom.parentArtifactId );
+            fields.put( "parent.version", pom.parentVersion );
+            fields.values().removeAll( Collections.singleton( null ) );
+            this.modelFields = fields;
+        }
+
+        String interpolate( String value )
+        {
+            return interpolate( value, 0 );
+        }
+
+        private String interpolate( String value, int depth )
+        {
+            if ( value == null || depth > MAX_INTERPOLATION_DEPTH )
+            {
+                return value;
+            }
+
+            int start = value.indexOf( "${" );
+            if ( start < 0 )
+            {
+                return value;
+            }
+
+            StringBuilder result = new StringBuilder( value.length() );
+            int position = 0;
+            while ( start >= 0 )
+            {
+                int end = value.indexOf( '}', start + 2 );
+                if ( end < 0 )
+                {
+                    break;
+                }
+                result.append( value, position, start );
+
+                String expression = value.substring( start + 2, end );
+                String resolved = resolve( expression );
+                if ( resolved != null )
+                {
+                    result.append( interpolate( resolved, depth + 1 ) );
+                }
+                else
+                {
+                    result.append( value, start, end + 1 );
+                }
+
+                position = end + 1;
+                start = value.indexOf( "${", position );
+            }
+            result.append( value, position, value.length() );
+            return result.toString();
+        }
+
+        private String resolve( String expression )
+        {
+            for ( String prefix : PROJECT_PREFIXES )
+            {
+                if ( expression.startsWith( prefix ) )
+                {
+                    String field = modelFields.get( expression.substring( prefix.length() ) );
+                    if ( field != null )
+                    {
+                        return field;
+                    }
+                }
+            }
+
+            String value = userProperties.getProperty( expression );
+            if ( value == null )
+            {
+                value = modelProperties.getProperty( expression );
+            }
+            if ( value == null )
+            {
+                value = systemProperties.getProperty( expression );
+            }
+            if ( value == null )
+            {
+                value = modelFields.get( expression );
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.jboss.maven.extension.dependency.resolver.lean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.model.Repository;
+
+/**
+ * The parts of a raw POM which are needed to compute its managed versions. Everything else is dropped while the POM is
+ * read.
+ */
+class LeanPom
+{
+    String groupId;
+
+    String artifactId;
+
+    String version;
+
+    String packaging = "jar";
+
+    String parentGroupId;
+
+    String parentArtifactId;
+
+    String parentVersion;
+
+    final Properties properties = new Properties();
+
+    final List<ManagedDependency> managedDependencies = new ArrayList<ManagedDependency>();
+
+    final List<ManagedPlugin> managedPlugins = new ArrayList<ManagedPlugin>();
+
+    final List<Repository> repositories = new ArrayList<Repository>();
+
+    /**
+     * The profiles which contribute properties, dependency management or plugin management. Profiles without
+     * activation are left out, they are never active when a remote POM is built.
+     */
+    final List<Profile> managementProfiles = new ArrayList<Profile>();
+
+    boolean hasParent()
+    {
+        return parentArtifactId != null;
+    }
+
+    static class ManagedDependency
+    {
+        String groupId;
+
+        String artifactId;
+
+        String version;
+
+        String type = "jar";
+
+        String classifier;
+
+        String scope;
+
+        /**
+         * Same as the management key used by maven when merging inherited dependency management
+         */
+        String getManagementKey()
+        {
+            return groupId + ":" + artifactId + ":" + type + ( classifier != null ? ":" + classifier : "" );
+        }
+    }
+
+    static class ManagedPlugin
+    {
+        String groupId = "org.apache.maven.plugins";
+
+        String artifactId;
+
+        String version;
+
+        boolean inherited = true;
+
+        String getKey()
+        {
+            return groupId + ":" + artifactId;
+        }
+    }
+
+    /**
+     * A profile with its activation and the management it contributes. Only activation by property and by the
+     * existence of the project directory can be evaluated without building the model.
+     */
+    static class Profile
+    {
+        /**
+         * False if the profile is activated by default, by the jdk, the os or other files
+         */
+        boolean evaluable = true;
+
+        String propertyName;
+
+        String propertyValue;
+
+        /**
+         * Whether the profile is activated when the project directory exists, or when it's missing
+         */
+        Boolean basedirExists;
+
+        final Properties properties = new Properties();
+
+        final List<ManagedDependency> managedDependencies = new ArrayList<ManagedDependency>();
+
+        final List<ManagedPlugin> managedPlugins = new ArrayList<ManagedPlugin>();
+    }
+}
@@ -0,0 +1,488 @@
+package org.jboss.maven.extension.dependency.resolver.lean;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.maven.model.Repository;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.ManagedDependency;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.ManagedPlugin;
+import org.jboss.maven.extension.dependency.resolver.lean.LeanPom.Profile;
+
+/**
+ * Streaming POM reader which only keeps the coordinates, parent, properties, repositories, dependency management and
+ * plugin management of a POM. All other elements are skipped without being materialized.
+ */
+class LeanPomReader
+{
+    /**
+     * Read a POM
+     * 
+     * @param in Stream of the POM, closed when done
+     * @return The lean POM
+     * @throws IOException If the POM can't be read or is not well formed
+     */
+    static LeanPom read( InputStream in )
+        throws IOException
+    {
+        try
+        {
+            XmlPullParser parser = new MXParser();
+            parser.setInput( ReaderFactory.newXmlReader( in ) );
+            parser.nextTag();
+
+            LeanPom pom = new LeanPom();
+            while ( nextChild( parser ) )
+            {
+                String name = parser.getName();
+                if ( "groupId".equals( name ) )
+                {
+                    pom.groupId = readText( parser );
+                }
+                else if ( "artifactId".equals( name ) )
+                {
+                    pom.artifactId = readText( parser );
+                }
+                else if ( "version".equals( name ) )
+                {
+                    pom.version = readText( parser );
+                }
+                else if ( "packaging".equals( name ) )
+                {
+                    pom.packaging = readText( parser );
+                }
+                else if ( "parent".equals( name ) )
+                {
+                    readParent( parser, pom );
+                }
+                else if ( "properties".equals( name ) )
+                {
+                    readProperties( parser, pom );
+                }
+                else if ( "dependencyManagement".equals( name ) )
+                {
+                    readDependencyManagement( parser, pom );
+                }
+                else if ( "build".equals( name ) )
+                {
+                    readBuild( parser, pom );
+                }
+                else if ( "repositories".equals( name ) )
+                {
+                    readRepositories( parser, pom );
+                }
+                else if ( "profiles".equals( name ) )
+                {
+                    readProfiles( parser, pom );
+                }
+                else
+                {
+                    skip( parser );
+                }
+            }
+            return pom;
+        }
+        catch ( XmlPullParserException e )
+        {
+            throw new IOException( "Could not parse POM", e );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static void readParent( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            String name = parser.getName();
+            if ( "groupId".equals( name ) )
+            {
+                pom.parentGroupId = readText( parser );
+            }
+            else if ( "artifactId".equals( name ) )
+            {
+                pom.parentArtifactId = readText( parser );
+            }
+            else if ( "version".equals( name ) )
+            {
+                pom.parentVersion = readText( parser );
+            }
+            else
+            {
+                skip( parser );
+            }
+        }
+    }
+
+    private static void readProperties( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            String name = parser.getName();
+            pom.properties.setProperty( name, readText( parser ) );
+        }
+    }
+
+    private static void readDependencyManagement( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            if ( !"dependencies".equals( parser.getName() ) )
+            {
+                skip( parser );
+                continue;
+            }
+            while ( nextChild( parser ) )
+            {
+                if ( "dependency".equals( parser.getName() ) )
+                {
+                    pom.managedDependencies.add( readDependency( parser ) );
+                }
+                else
+                {
+                    skip( parser );
+                }
+            }
+        }
+    }
+
+    private static ManagedDependency readDependency( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        ManagedDependency dependency = new ManagedDependency();
+        while ( nextChild( parser ) )
+        {
+            String name = parser.getName();
+            if ( "groupId".equals( name ) )
+            {
+                dependency.groupId = readText( parser );
+            }
+            else if ( "artifactId".equals( name ) )
+            {
+                dependency.artifactId = readText( parser );
+            }
+            else if ( "version".equals( name ) )
+            {
+                dependency.version = readText( parser );
+            }
+            else if ( "type".equals( name ) )
+            {
+                dependency.type = readText( parser );
+            }
+            else if ( "classifier".equals( name ) )
+            {
+                dependency.classifier = readText( parser );
+            }
+            else if ( "scope".equals( name ) )
+            {
+                dependency.scope = readText( parser );
+            }
+            else
+            {
+                skip( parser );
+            }
+        }
+        return dependency;
+    }
+
+    private static void readBuild( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            if ( !"pluginManagement".equals( parser.getName() ) )
+            {
+                skip( parser );
+                continue;
+            }
+            while ( nextChild( parser ) )
+            {
+                if ( !"plugins".equals( parser.getName() ) )
+                {
+                    skip( parser );
+                    continue;
+                }
+                while ( nextChild( parser ) )
+                {
+                    if ( "plugin".equals( parser.getName() ) )
+                    {
+                        pom.managedPlugins.add( readPlugin( parser ) );
+                    }
+                    else
+                    {
+                        skip( parser );
+                    }
+                }
+            }
+        }
+    }
+
+    private static ManagedPlugin readPlugin( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        ManagedPlugin plugin = new ManagedPlugin();
+        while ( nextChild( parser ) )
+        {
+            String name = parser.getName();
+            if ( "groupId".equals( name ) )
+            {
+                plugin.groupId = readText( parser );
+            }
+            else if ( "artifactId".equals( name ) )
+            {
+                plugin.artifactId = readText( parser );
+            }
+            else if ( "version".equals( name ) )
+            {
+                plugin.version = readText( parser );
+            }
+            else if ( "inherited".equals( name ) )
+            {
+                plugin.inherited = !"false".equals( readText( parser ) );
+            }
+            else
+            {
+                // Configuration, executions and plugin dependencies are the bulk of most plugin declarations
+                skip( parser );
+            }
+        }
+        return plugin;
+    }
+
+    private static void readRepositories( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            if ( !"repository".equals( parser.getName() ) )
+            {
+                skip( parser );
+                continue;
+            }
+            Repository repository = new Repository();
+            while ( nextChild( parser ) )
+            {
+                String name = parser.getName();
+                if ( "id".equals( name ) )
+                {
+                    repository.setId( readText( parser ) );
+                }
+                else if ( "url".equals( name ) )
+                {
+                    repository.setUrl( readText( parser ) );
+                }
+                else if ( "layout".equals( name ) )
+                {
+                    repository.setLayout( readText( parser ) );
+                }
+                else
+                {
+                    skip( parser );
+                }
+            }
+            pom.repositories.add( repository );
+        }
+    }
+
+    /**
+     * Only the profiles which would change the managed versions if they were active are kept, together with their
+     * activation so the caller can check whether they are active.
+     */
+    private static void readProfiles( XmlPullParser parser, LeanPom pom )
+        throws XmlPullParserException, IOException
+    {
+        while ( nextChild( parser ) )
+        {
+            if ( !"profile".equals( parser.getName() ) )
+            {
+                skip( parser );
+                continue;
+            }
+            LeanPom content = new LeanPom();
+            Profile profile = null;
+            while ( nextChild( parser ) )
+            {
+                String name = parser.getName();
+                if ( "properties".equals( name ) )
+                {
+                    readProperties( parser, content );
+                }
+                else if ( "dependencyManagement".equals( name ) )
+                {
+                    readDependencyManagement( parser, content );
+                }
+                else if ( "build".equals( name ) )
+                {
+                    readBuild( parser, content );
+                }
+                else if ( "activation".equals( name ) )
+                {
+                    profile = readActivation( parser );
+                }
+                else
+                {
+                    skip( parser );
+                }
+            }
+            boolean affectsManagement =
+                !content.properties.isEmpty() || !content.managedDependencies.isEmpty()
+                    || !content.managedPlugins.isEmpty();
+            if ( profile != null && affectsManagement )
+            {
+                profile.properties.putAll( content.properties );
+                profile.managedDependencies.addAll( content.managedDependencies );
+                profile.managedPlugins.addAll( content.managedPlugins );
+                pom.managementProfiles.add( profile );
+            }
+        }
+    }
+
+    /**
+     * Read a profile activation
+     * 
+     * @return The profile with its activation, or null if it can't be activated without being selected explicitly
+     */
+    private static Profile readActivation( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        Profile profile = null;
+        while ( nextChild( parser ) )
+        {
+            String name = parser.getName();
+            if ( "activeByDefault".equals( name ) )
+            {
+                if ( "true".equals( readText( parser ) ) )
+                {
+                    profile = unevaluable( profile );
+                }
+            }
+            else if ( "property".equals( name ) )
+            {
+                if ( profile == null )
+                {
+                    profile = new Profile();
+                }
+                while ( nextChild( parser ) )
+                {
+                    if ( "name".equals( parser.getName() ) )
+                    {
+                        profile.propertyName = readText( parser );
+                    }
+                    else if ( "value".equals( parser.getName() ) )
+                    {
+                        profile.propertyValue = readText( parser );
+                    }
+                    else
+                    {
+                        skip( parser );
+                    }
+                }
+            }
+            else if ( "file".equals( name ) )
+            {
+                if ( profile == null )
+                {
+                    profile = new Profile();
+                }
+                while ( nextChild( parser ) )
+                {
+                    String fileName = parser.getName();
+                    if ( ( "exists".equals( fileName ) || "missing".equals( fileName ) )
+                        && "${basedir}".equals( readText( parser ) ) )
+                    {
+                        profile.basedirExists = Boolean.valueOf( "exists".equals( fileName ) );
+                    }
+                    else
+                    {
+                        profile = unevaluable( profile );
+                        if ( parser.getEventType() == XmlPullParser.START_TAG )
+                        {
+                            skip( parser );
+                        }
+                    }
+                }
+            }
+            else
+            {
+                profile = unevaluable( profile );
+                skip( parser );
+            }
+        }
+        return profile;
+    }
+
+    private static Profile unevaluable( Profile profile )
+    {
+        Profile result = profile != null ? profile : new Profile();
+        result.evaluable = false;
+        return result;
+    }
+
+    /**
+     * Move to the next child element of the current element.
+     * 
+     * @return true if positioned at the start tag of a child, false if the end tag of the current element was reached
+     */
+    private static boolean nextChild( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        while ( true )
+        {
+            int eventType = parser.next();
+            if ( eventType == XmlPullParser.START_TAG )
+            {
+                return true;
+            }
+            if ( eventType == XmlPullParser.END_TAG )
+            {
+                return false;
+            }
+            if ( eventType == XmlPullParser.END_DOCUMENT )
+            {
+                throw new XmlPullParserException( "Unexpected end of document", parser, null );
+            }
+        }
+    }
+
+    /**
+     * Read the trimmed text content of the current element, ending at its end tag
+     */
+    private static String readText( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        return parser.nextText().trim();
+    }
+
+    /**
+     * Skip the current element including all of its children, ending at its end tag
+     */
+    private static void skip( XmlPullParser parser )
+        throws XmlPullParserException, IOException
+    {
+        int depth = 1;
+        while ( depth > 0 )
+        {
+            int eventType = parser.next();
+            if ( eventType == XmlPullParser.START_TAG )
+            {
+                depth++;
+            }
+            else if ( eventType == XmlPullParser.END_TAG )
+            {
+                depth--;
+            }
+            else if ( eventType == XmlPullParser.END_DOCUMENT )
+            {
+                throw new XmlPullParserException( "Unexpected end of document", parser, null );
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.jboss.maven.extension.dependency.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+
+/**
+ * Reads version overrides from a UTF-8 file, one override per line, either in properties form or as CSV. <br />
+ * ex: org.foo:bar=1.0 or org.foo,bar,1.0
+ * <p>
+ * Blank lines and lines starting with # or ! are ignored, as is a CSV header starting with groupId. A UTF-8 byte order
+ * mark, which spreadsheets often write, is skipped. Escapes and continuation lines of the properties format are not
+ * supported. The file is scanned in reusable char buffers, and the only objects created per line are the key and
+ * version put in the map.
+ */
+public class VersionOverrideFileReader
+{
+    private static final Logger logger = Logging.getLogger();
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final String CSV_HEADER = "groupId";
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final String source;
+
+    private final Map<String, String> overrides;
+
+    private int lineNumber;
+
+    /**
+     * Reused to join the groupId and artifactId of CSV lines
+     */
+    private char[] keyBuffer = new char[128];
+
+    private VersionOverrideFileReader( String source, Map<String, String> overrides )
+    {
+        this.source = source;
+        this.overrides = overrides;
+    }
+
+    /**
+     * Read the overrides of a file into a map. Later lines override earlier lines with the same groupId:artifactId.
+     * 
+     * @param file The file to read
+     * @param overrides Map between groupId:artifactId and version to put the overrides in
+     * @return The number of overrides read
+     * @throws IOException If the file can't be read
+     */
+    public static int read( File file, Map<String, String> overrides )
+        throws IOException
+    {
+        Reader reader = new InputStreamReader( new FileInputStream( file ), "UTF-8" );
+        try
+        {
+            return read( reader, file.getPath(), overrides );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the overrides of a stream into a map. The reader is not closed.
+     * 
+     * @param reader The stream of overrides, read to its end
+     * @param source A description of the stream for warnings
+     * @param overrides Map between groupId:artifactId and version to put the overrides in
+     * @return The number of overrides read
+     * @throws IOException If the stream can't be read
+     */
+    public static int read( Reader reader, String source, Map<String, String> overrides )
+        throws IOException
+    {
+        return new VersionOverrideFileReader( source, overrides ).readLines( reader );
+    }
+
+    private int readLines( Reader reader )
+        throws IOException
+    {
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = 0;
+        int scan = 0;
+        int end = 0;
+        int count = 0;
+        while ( true )
+        {
+            while ( scan < end && buffer[scan] != '\n' )
+            {
+                scan++;
+            }
+            if ( scan < end )
+            {
+                count += readLine( buffer, start, scan );
+                start = ++scan;
+                continue;
+            }
+
+            // No complete line left, move the partial line to the front of the buffer and read more
+            if ( start > 0 )
+            {
+                System.arraycopy( buffer, start, buffer, 0, end - start );
+                end -= start;
+                scan -= start;
+                start = 0;
+            }
+            if ( end == buffer.length )
+            {
+                buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+            }
+            int read = reader.read( buffer, end, buffer.length - end );
+            if ( read < 0 )
+            {
+                if ( start < end )
+                {
+                    count += readLine( buffer, start, end );
+                }
+                return count;
+            }
+            end += read;
+        }
+    }
+
+    /**
+     * Parse one line, without its line feed
+     * 
+     * @return 1 if the line held an override, else 0
+     */
+    private int readLine( char[] buffer, int from, int to )
+    {
+        lineNumber++;
+        if ( lineNumber == 1 && from < to && buffer[from] == BYTE_ORDER_MARK )
+        {
+            from++;
+        }
+
+        // Trimming also drops the carriage return of CRLF line ends
+        int start = trimStart( buffer, from, to );
+        int end = trimEnd( buffer, start, to );
+        if ( start == end || buffer[start] == '#' || buffer[start] == '!' )
+        {
+            return 0;
+        }
+
+        int equals = indexOf( buffer, start, end, '=' );
+        if ( equals >= 0 )
+        {
+            return addOverride( buffer, start, trimEnd( buffer, start, equals ), trimStart( buffer, equals + 1, end ),
+                                end );
+        }
+
+        int firstComma = indexOf( buffer, start, end, ',' );
+        int secondComma = firstComma < 0 ? -1 : indexOf( buffer, firstComma + 1, end, ',' );
+        if ( secondComma < 0 || indexOf( buffer, secondComma + 1, end, ',' ) >= 0 )
+        {
+            logger.warn( "Ignoring line " + lineNumber + " of " + source
+                + ", expected groupId:artifactId=version or groupId,artifactId,version" );
+            return 0;
+        }
+
+        int groupIdEnd = trimEnd( buffer, start, firstComma );
+        int artifactIdStart = trimStart( buffer, firstComma + 1, secondComma );
+        int artifactIdEnd = trimEnd( buffer, artifactIdStart, secondComma );
+        if ( lineNumber == 1 && groupIdEnd - start == CSV_HEADER.length()
+            && CSV_HEADER.equals( new String( buffer, start, groupIdEnd - start ) ) )
+        {
+            return 0;
+        }
+        if ( start == groupIdEnd || artifactIdStart == artifactIdEnd )
+        {
+            logger.warn( "Ignoring line " + lineNumber + " of " + source + ", the groupId or artifactId is empty" );
+            return 0;
+        }
+
+        int groupIdLength = groupIdEnd - start;
+        int keyLength = groupIdLength + 1 + artifactIdEnd - artifactIdStart;
+        if ( keyBuffer.length < keyLength )
+        {
+            keyBuffer = new char[keyLength * 2];
+        }
+        System.arraycopy( buffer, start, keyBuffer, 0, groupIdLength );
+        keyBuffer[groupIdLength] = ':';
+        System.arraycopy( buffer, artifactIdStart, keyBuffer, groupIdLength + 1, artifactIdEnd - artifactIdStart );
+        int versionStart = trimStart( buffer, secondComma + 1, end );
+        return addOverride( new String( keyBuffer, 0, keyLength ), buffer, versionStart, end );
+    }
+
+    private int addOverride( char[] buffer, int keyStart, int keyEnd, int versionStart, int versionEnd )
+    {
+        if ( keyStart == keyEnd )
+        {
+            logger.warn( "Ignoring line " + lineNumber + " of " + source + ", the groupId:artifactId is empty" );
+            return 0;
+        }
+        return addOverride( new String( buffer, keyStart, keyEnd - keyStart ), buffer, versionStart, versionEnd );
+    }
+
+    private int addOverride( String key, char[] buffer, int versionStart, int versionEnd )
+    {
+        if ( versionStart == versionEnd )
+        {
+            logger.warn( "Ignoring line " + lineNumber + " of " + source + ", the version of " + key + " is empty" );
+            return 0;
+        }
+        overrides.put( key, new String( buffer, versionStart, versionEnd - versionStart ) );
+        return 1;
+    }
+
+    private static int indexOf( char[] buffer, int from, int to, char character )
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            if ( buffer[i] == character )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int trimStart( char[] buffer, int from, int to )
+    {
+        while ( from < to && buffer[from] <= ' ' )
+        {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd( char[] buffer, int from, int to )
+    {
+        while ( to > from && buffer[to - 1] <= ' ' )
+        {
+            to--;
+        }
+        return to;
+    }
+}
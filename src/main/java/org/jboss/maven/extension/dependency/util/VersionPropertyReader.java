@@ -1,37 +1,159 @@
 package org.jboss.maven.extension.dependency.util;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
 
+import org.apache.maven.execution.MavenSession;
+
 /**
- * Class containing static methods that deal with the JVM system properties for version overrides
+ * Snapshot of the properties of a maven session, which configure the extension and hold the version overrides. The
+ * user properties of the session win over its system properties, and the global System properties are never read, so
+ * sessions embedded in the same JVM don't see each other's overrides.
+ * <p>
+ * The properties are copied once when the snapshot is taken, and the properties whose names start with one of the
+ * prefixes given at that time are partitioned by prefix in the same pass. The snapshot is immutable, so the modifiers
+ * of a session can share it.
  */
 public class VersionPropertyReader
 {
+    private final Properties systemProperties;
+
+    private final Properties userProperties;
+
     /**
-     * Filter System.getProperties() by accepting only properties with names that start with prefix. Trims the prefix
-     * from the property names when inserting them into the returned Map.
+     * Map between prefix and the properties starting with it, without the prefix
+     */
+    private final Map<String, Map<String, String>> propertiesByPrefix;
+
+    /**
+     * Take a snapshot of the properties of a session
      * 
-     * @param prepend The String that must be at the start of the property names
-     * @return Map<String, String> map of properties with matching prepend and their values
+     * @param session The maven session
+     * @param prefixes The prefixes of the properties to partition
+     * @return The snapshot
      */
-    public static Map<String, String> getPropertiesByPrefix( String prefix )
+    public static VersionPropertyReader fromSession( MavenSession session, String... prefixes )
     {
-        Properties systemProperties = System.getProperties();
-        Map<String, String> matchedProperties = new HashMap<String, String>();
-        int prefixLength = prefix.length();
+        return new VersionPropertyReader( session.getSystemProperties(), session.getUserProperties(), prefixes );
+    }
 
-        for ( String propertyName : systemProperties.stringPropertyNames() )
+    /**
+     * Take a snapshot of system and user properties
+     * 
+     * @param systemProperties The system properties, may be null
+     * @param userProperties The user properties, they win over the system properties, may be null
+     * @param prefixes The prefixes of the properties to partition
+     */
+    public VersionPropertyReader( Properties systemProperties, Properties userProperties, String... prefixes )
+    {
+        Map<String, Map<String, String>> partitions = new HashMap<String, Map<String, String>>();
+        for ( String prefix : prefixes )
         {
-            if ( propertyName.startsWith( prefix ) )
+            partitions.put( prefix, new HashMap<String, String>() );
+        }
+
+        this.systemProperties = copy( systemProperties, prefixes, partitions );
+        this.userProperties = copy( userProperties, prefixes, partitions );
+
+        for ( Entry<String, Map<String, String>> partition : partitions.entrySet() )
+        {
+            partition.setValue( Collections.unmodifiableMap( partition.getValue() ) );
+        }
+        this.propertiesByPrefix = partitions;
+    }
+
+    /**
+     * Copy properties, and add the ones starting with one of the prefixes to the partition of that prefix
+     */
+    private static Properties copy( Properties properties, String[] prefixes,
+                                    Map<String, Map<String, String>> partitions )
+    {
+        Properties copy = new Properties();
+        if ( properties == null )
+        {
+            return copy;
+        }
+
+        // Properties is a Hashtable, locking it keeps it from changing while it is iterated
+        synchronized ( properties )
+        {
+            for ( Entry<Object, Object> property : properties.entrySet() )
             {
-                String trimmedPropertyName = propertyName.substring( prefixLength );
-                matchedProperties.put( trimmedPropertyName, systemProperties.getProperty( propertyName ) );
+                if ( !( property.getKey() instanceof String ) || !( property.getValue() instanceof String ) )
+                {
+                    continue;
+                }
+                String name = (String) property.getKey();
+                String value = (String) property.getValue();
+                copy.setProperty( name, value );
+
+                for ( String prefix : prefixes )
+                {
+                    if ( name.startsWith( prefix ) )
+                    {
+                        partitions.get( prefix ).put( name.substring( prefix.length() ), value );
+                    }
+                }
             }
+        }
+        return copy;
+    }
+
+    /**
+     * Get the value of a property, from the user properties if it is one, else from the system properties
+     * 
+     * @param name The name of the property
+     * @return The value, or null if the property is not set
+     */
+    public String getProperty( String name )
+    {
+        String value = userProperties.getProperty( name );
+        return value != null ? value : systemProperties.getProperty( name );
+    }
 
+    /**
+     * Get the properties with names that start with prefix. Trims the prefix from the property names.
+     * 
+     * @param prefix One of the prefixes given when the snapshot was taken
+     * @return Unmodifiable map of properties with matching prefix and their values
+     */
+    public Map<String, String> getPropertiesByPrefix( String prefix )
+    {
+        Map<String, String> properties = propertiesByPrefix.get( prefix );
+        if ( properties == null )
+        {
+            throw new IllegalArgumentException( "Properties were not partitioned by prefix '" + prefix + "'" );
         }
+        return properties;
+    }
 
-        return matchedProperties;
+    /**
+     * Check whether any of the properties has a name that starts with prefix.
+     * 
+     * @param prefix One of the prefixes given when the snapshot was taken
+     * @return true iff at least one property name starts with prefix
+     */
+    public boolean hasPropertyWithPrefix( String prefix )
+    {
+        return !getPropertiesByPrefix( prefix ).isEmpty();
+    }
+
+    /**
+     * @return The system properties of the snapshot, for building models. Must not be modified.
+     */
+    public Properties getSystemProperties()
+    {
+        return systemProperties;
+    }
+
+    /**
+     * @return The user properties of the snapshot, for building models. Must not be modified.
+     */
+    public Properties getUserProperties()
+    {
+        return userProperties;
     }
 }
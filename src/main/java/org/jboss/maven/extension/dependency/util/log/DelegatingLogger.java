@@ -0,0 +1,137 @@
+package org.jboss.maven.extension.dependency.util.log;
+
+import org.codehaus.plexus.logging.Logger;
+
+/**
+ * Logger which forwards to another logger that can be replaced at any time. The classes of the extension keep the
+ * instance from Logging in static fields, which are initialized before maven injects its own logger.
+ */
+class DelegatingLogger
+    implements Logger
+{
+    private volatile Logger delegate;
+
+    DelegatingLogger( Logger delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    void setDelegate( Logger delegate )
+    {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void debug( String message )
+    {
+        delegate.debug( message );
+    }
+
+    @Override
+    public void debug( String message, Throwable throwable )
+    {
+        delegate.debug( message, throwable );
+    }
+
+    @Override
+    public boolean isDebugEnabled()
+    {
+        return delegate.isDebugEnabled();
+    }
+
+    @Override
+    public void info( String message )
+    {
+        delegate.info( message );
+    }
+
+    @Override
+    public void info( String message, Throwable throwable )
+    {
+        delegate.info( message, throwable );
+    }
+
+    @Override
+    public boolean isInfoEnabled()
+    {
+        return delegate.isInfoEnabled();
+    }
+
+    @Override
+    public void warn( String message )
+    {
+        delegate.warn( message );
+    }
+
+    @Override
+    public void warn( String message, Throwable throwable )
+    {
+        delegate.warn( message, throwable );
+    }
+
+    @Override
+    public boolean isWarnEnabled()
+    {
+        return delegate.isWarnEnabled();
+    }
+
+    @Override
+    public void error( String message )
+    {
+        delegate.error( message );
+    }
+
+    @Override
+    public void error( String message, Throwable throwable )
+    {
+        delegate.error( message, throwable );
+    }
+
+    @Override
+    public boolean isErrorEnabled()
+    {
+        return delegate.isErrorEnabled();
+    }
+
+    @Override
+    public void fatalError( String message )
+    {
+        delegate.fatalError( message );
+    }
+
+    @Override
+    public void fatalError( String message, Throwable throwable )
+    {
+        delegate.fatalError( message, throwable );
+    }
+
+    @Override
+    public boolean isFatalErrorEnabled()
+    {
+        return delegate.isFatalErrorEnabled();
+    }
+
+    @Override
+    public int getThreshold()
+    {
+        return delegate.getThreshold();
+    }
+
+    @Override
+    public void setThreshold( int threshold )
+    {
+        delegate.setThreshold( threshold );
+    }
+
+    @Override
+    public Logger getChildLogger( String name )
+    {
+        return delegate.getChildLogger( name );
+    }
+
+    @Override
+    public String getName()
+    {
+        return delegate.getName();
+    }
+}
@@ -3,25 +3,36 @@ package org.jboss.maven.extension.dependency.util.log;
 import org.codehaus.plexus.logging.Logger;
 
 /**
- * Provides a way for classes in the local packages to perform central logging
+ * Provides a way for classes in the local packages to perform central logging. The log goes to maven's own logger once
+ * the extension is wired into a session, so it follows -q and -X. Until then, ex: when the classes are used outside of
+ * maven, it goes to stdout at the info level.
  */
 public class Logging
 {
-    private static Logger logger;
+    private static final DelegatingLogger logger = new DelegatingLogger( new StdoutLogger( Logger.LEVEL_INFO ) );
 
     /**
-     * Yields the central logger object.
+     * Yields the central logger object. The same object is returned before and after maven's logger is set, so it can
+     * be kept in a static field.
      * 
      * @return A Logger object, never null.
      */
     public static Logger getLogger()
     {
-        // First access creates the logger (on-demand)
-        if ( logger == null )
+        return logger;
+    }
+
+    /**
+     * Send the central log to a logger of maven
+     * 
+     * @param mavenLogger The logger injected by maven
+     */
+    public static void setLogger( Logger mavenLogger )
+    {
+        if ( mavenLogger != null )
         {
-            logger = new StdoutLogger( Logger.LEVEL_DEBUG );
+            logger.setDelegate( mavenLogger );
         }
-        return logger;
     }
 
     /**
@@ -3,7 +3,7 @@ package org.jboss.maven.extension.dependency.util.log;
 import org.codehaus.plexus.logging.Logger;
 
 /**
- * Haven't been successful so far hooking into the real log system, this class should hopefully just be a placeholder.
+ * Logger which prints to stdout, used when the extension's classes run outside of maven.
  */
 public class StdoutLogger
     implements Logger
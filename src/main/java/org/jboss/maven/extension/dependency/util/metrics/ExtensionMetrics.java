@@ -0,0 +1,378 @@
+package org.jboss.maven.extension.dependency.util.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.codehaus.plexus.logging.Logger;
+import org.jboss.maven.extension.dependency.util.log.Logging;
+
+/**
+ * Central timers and counters of what the extension costs a build. They are reset when a session starts, exposed as
+ * an MXBean, and can be dumped as JSON when the session ends.
+ */
+public class ExtensionMetrics
+    implements ExtensionMetricsMXBean
+{
+    private static final Logger logger = Logging.getLogger();
+
+    private static final String OBJECT_NAME = "org.jboss.maven.extension.dependency:type=ExtensionMetrics";
+
+    /**
+     * Setting up the modifiers of a session, before any model is modified
+     */
+    public static final String INIT = "init";
+
+    /**
+     * The whole of afterProjectsRead
+     */
+    public static final String AFTER_PROJECTS_READ = "afterProjectsRead";
+
+    /**
+     * Resolving remote POMs and reading their artifact descriptors
+     */
+    public static final String REMOTE_RESOLUTION = "remoteResolution";
+
+    /**
+     * Building the effective models of remote POMs
+     */
+    public static final String MODEL_BUILDING = "modelBuilding";
+
+    /**
+     * Applying the modifiers to one model
+     */
+    public static final String MODIFY_MODEL = "modifyModel";
+
+    /**
+     * Prefix of the timers of the modifiers, followed by the name of the modifier. Only recorded when the metrics are
+     * detailed, since the modifiers share one traversal and have to be timed per visited element.
+     */
+    public static final String MODIFIER_PREFIX = "modifier.";
+
+    /**
+     * Generating and writing one META-INF file
+     */
+    public static final String META_INF_WRITE = "metaInfWrite";
+
+    public static final String OVERRIDES_APPLIED = "overridesApplied";
+
+    /**
+     * Overrides which were not applied to any module
+     */
+    public static final String OVERRIDES_UNMATCHED = "overridesUnmatched";
+
+    public static final String REMOTE_POMS_RESOLVED = "remotePomsResolved";
+
+    /**
+     * Remote POMs whose management was read from the override map cache
+     */
+    public static final String CACHE_HITS = "cacheHits";
+
+    /**
+     * Lookups of parent and import scoped POMs answered by the session model cache, which are not read again
+     */
+    public static final String MODEL_CACHE_HITS = "modelCacheHits";
+
+    /**
+     * Lookups of parent and import scoped POMs not found in the session model cache
+     */
+    public static final String MODEL_CACHE_MISSES = "modelCacheMisses";
+
+    public static final String META_INF_FILES_UNCHANGED = "metaInfFilesUnchanged";
+
+    /**
+     * Bytes of heap in use when afterProjectsRead ends
+     */
+    public static final String HEAP_USED_AFTER_PROJECTS_READ = "heapUsedAfterProjectsRead";
+
+    /**
+     * Peak bytes of heap used by the JVM when afterProjectsRead ends, the sum of the peaks of the heap pools
+     */
+    public static final String HEAP_PEAK_AFTER_PROJECTS_READ = "heapPeakAfterProjectsRead";
+
+    private static final ExtensionMetrics instance = new ExtensionMetrics();
+
+    private static boolean registered;
+
+    private final ConcurrentMap<String, TimerMetric> timers = new ConcurrentHashMap<String, TimerMetric>();
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Whether costly metrics, like the time of each modifier, are recorded
+     */
+    private volatile boolean detailed;
+
+    private ExtensionMetrics()
+    {
+    }
+
+    /**
+     * @return The metrics of the current session
+     */
+    public static ExtensionMetrics getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Clear the metrics for a new session, and make sure they are registered as an MXBean
+     * 
+     * @param detailed Whether to record costly metrics too, like the time of each modifier
+     */
+    public static void reset( boolean detailed )
+    {
+        instance.timers.clear();
+        instance.counters.clear();
+        instance.detailed = detailed;
+        register();
+    }
+
+    /**
+     * @return Whether costly metrics, like the time of each modifier, are recorded in this session
+     */
+    public boolean isDetailed()
+    {
+        return detailed;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server. An instance registered by another copy of the extension,
+     * loaded in another class realm, is replaced.
+     */
+    private static synchronized void register()
+    {
+        if ( registered )
+        {
+            return;
+        }
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName( OBJECT_NAME );
+            try
+            {
+                server.registerMBean( instance, name );
+            }
+            catch ( InstanceAlreadyExistsException e )
+            {
+                server.unregisterMBean( name );
+                server.registerMBean( instance, name );
+            }
+            registered = true;
+        }
+        catch ( JMException e )
+        {
+            logger.debug( "Could not register the metrics MBean: " + e );
+        }
+        catch ( SecurityException e )
+        {
+            logger.debug( "Could not register the metrics MBean: " + e );
+        }
+    }
+
+    /**
+     * Get a timer, creating it on first use
+     * 
+     * @param name The name of the timer
+     * @return The timer
+     */
+    public TimerMetric timer( String name )
+    {
+        TimerMetric timer = timers.get( name );
+        if ( timer == null )
+        {
+            TimerMetric newTimer = new TimerMetric();
+            timer = timers.putIfAbsent( name, newTimer );
+            if ( timer == null )
+            {
+                timer = newTimer;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Add to a counter, creating it on first use
+     * 
+     * @param name The name of the counter
+     * @param delta The amount to add
+     */
+    public void count( String name, long delta )
+    {
+        AtomicLong counter = counters.get( name );
+        if ( counter == null )
+        {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent( name, newCounter );
+            if ( counter == null )
+            {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet( delta );
+    }
+
+    /**
+     * Set a counter to a value measured once, in place of counting
+     * 
+     * @param name The name of the counter
+     * @param value The value
+     */
+    public void set( String name, long value )
+    {
+        counters.put( name, new AtomicLong( value ) );
+    }
+
+    /**
+     * Record the heap in use now, and the peak heap usage of the JVM so far
+     * 
+     * @param usedName The name of the counter of the heap in use
+     * @param peakName The name of the counter of the peak heap usage
+     */
+    public void recordHeap( String usedName, String peakName )
+    {
+        set( usedName, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() );
+        long peak = 0;
+        for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+        {
+            if ( pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null )
+            {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        set( peakName, peak );
+    }
+
+    public Map<String, Long> getCounters()
+    {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for ( Entry<String, AtomicLong> counter : counters.entrySet() )
+        {
+            values.put( counter.getKey(), counter.getValue().get() );
+        }
+        return values;
+    }
+
+    public Map<String, Long> getTimerCounts()
+    {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for ( Entry<String, TimerMetric> timer : timers.entrySet() )
+        {
+            values.put( timer.getKey(), timer.getValue().getCount() );
+        }
+        return values;
+    }
+
+    public Map<String, Double> getTimerTotalMillis()
+    {
+        Map<String, Double> values = new TreeMap<String, Double>();
+        for ( Entry<String, TimerMetric> timer : timers.entrySet() )
+        {
+            values.put( timer.getKey(), toMillis( timer.getValue().getTotalNanos() ) );
+        }
+        return values;
+    }
+
+    public Map<String, Double> getTimerMaxMillis()
+    {
+        Map<String, Double> values = new TreeMap<String, Double>();
+        for ( Entry<String, TimerMetric> timer : timers.entrySet() )
+        {
+            values.put( timer.getKey(), toMillis( timer.getValue().getMaxNanos() ) );
+        }
+        return values;
+    }
+
+    private static double toMillis( long nanos )
+    {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * Write the metrics to a file as JSON, ex:
+     * {"counters":{"overridesApplied":3},"timers":{"init":{"count":1,"totalMillis":1.5,"maxMillis":1.5}}}
+     * 
+     * @param file The file to write, its directory is created if needed
+     * @throws IOException If the file can't be written
+     */
+    public void writeJson( File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            writer.write( "{\n  \"counters\": {" );
+            String separator = "\n";
+            for ( Entry<String, Long> counter : getCounters().entrySet() )
+            {
+                writer.write( separator + "    " + quote( counter.getKey() ) + ": " + counter.getValue() );
+                separator = ",\n";
+            }
+            writer.write( "\n  },\n  \"timers\": {" );
+
+            Map<String, TimerMetric> sortedTimers = new TreeMap<String, TimerMetric>( timers );
+            separator = "\n";
+            for ( Entry<String, TimerMetric> timer : sortedTimers.entrySet() )
+            {
+                TimerMetric metric = timer.getValue();
+                writer.write( separator + "    " + quote( timer.getKey() ) + ": { \"count\": " + metric.getCount()
+                    + ", \"totalMillis\": " + toMillis( metric.getTotalNanos() ) + ", \"maxMillis\": "
+                    + toMillis( metric.getMaxNanos() ) + " }" );
+                separator = ",\n";
+            }
+            writer.write( "\n  }\n}\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Quote a string as a JSON string, or give null for null
+     */
+    static String quote( String value )
+    {
+        if ( value == null )
+        {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder( value.length() + 2 );
+        quoted.append( '"' );
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            char c = value.charAt( i );
+            if ( c == '"' || c == '\\' )
+            {
+                quoted.append( '\\' ).append( c );
+            }
+            else if ( c < ' ' )
+            {
+                quoted.append( String.format( "\\u%04x", (int) c ) );
+            }
+            else
+            {
+                quoted.append( c );
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+}
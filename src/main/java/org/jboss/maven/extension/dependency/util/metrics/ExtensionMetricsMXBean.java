@@ -0,0 +1,30 @@
+package org.jboss.maven.extension.dependency.util.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of the extension, registered as
+ * org.jboss.maven.extension.dependency:type=ExtensionMetrics. The values are the ones of the current or last session.
+ */
+public interface ExtensionMetricsMXBean
+{
+    /**
+     * @return Map between counter name and value
+     */
+    public Map<String, Long> getCounters();
+
+    /**
+     * @return Map between timer name and the number of operations timed
+     */
+    public Map<String, Long> getTimerCounts();
+
+    /**
+     * @return Map between timer name and the total duration of its operations in milliseconds
+     */
+    public Map<String, Double> getTimerTotalMillis();
+
+    /**
+     * @return Map between timer name and the longest duration of one of its operations in milliseconds
+     */
+    public Map<String, Double> getTimerMaxMillis();
+}
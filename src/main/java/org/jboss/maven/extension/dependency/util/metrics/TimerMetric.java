@@ -0,0 +1,65 @@
+package org.jboss.maven.extension.dependency.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates the durations of a kind of operation, which may run concurrently. <br />
+ * ex: long start = timer.start(); ... timer.stop( start );
+ */
+public class TimerMetric
+{
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @return The start time to pass to stop
+     */
+    public long start()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record an operation which started at the given time and ends now
+     * 
+     * @param start The value returned by start
+     */
+    public void stop( long start )
+    {
+        record( System.nanoTime() - start );
+    }
+
+    /**
+     * Record the duration of an operation
+     * 
+     * @param nanos The duration in nanoseconds
+     */
+    public void record( long nanos )
+    {
+        count.incrementAndGet();
+        totalNanos.addAndGet( nanos );
+        long max = maxNanos.get();
+        while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) )
+        {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+}
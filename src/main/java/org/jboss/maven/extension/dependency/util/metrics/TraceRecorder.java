@@ -0,0 +1,204 @@
+package org.jboss.maven.extension.dependency.util.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records the spans of the work of the extension on a timeline, tagged by thread, and writes them in the trace event
+ * format of Chrome, which chrome://tracing and Perfetto can open. Tracing is off unless a trace file was given when the
+ * session started, and while it is off recording a span is a single check. <br />
+ * ex: long start = System.nanoTime(); ... TraceRecorder.getInstance().record( "resolvePom", "remote", start, "gav",
+ * gav );
+ */
+public class TraceRecorder
+{
+    private static final TraceRecorder instance = new TraceRecorder();
+
+    /**
+     * The file the trace of the current session is written to, null when tracing is off
+     */
+    private volatile File traceFile;
+
+    /**
+     * The time the trace of the current session starts at
+     */
+    private volatile long epochNanos;
+
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<Span>();
+
+    /**
+     * Map between the id and the name of the threads which recorded spans
+     */
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<Long, String>();
+
+    private TraceRecorder()
+    {
+    }
+
+    /**
+     * @return The trace recorder of the current session
+     */
+    public static TraceRecorder getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Clear the trace for a new session, and start or stop tracing
+     * 
+     * @param traceFile The file to write the trace to, or null to turn tracing off
+     */
+    public static void reset( File traceFile )
+    {
+        instance.spans.clear();
+        instance.threadNames.clear();
+        instance.epochNanos = System.nanoTime();
+        instance.traceFile = traceFile;
+    }
+
+    /**
+     * @return true iff the spans of the current session are recorded
+     */
+    public boolean isEnabled()
+    {
+        return traceFile != null;
+    }
+
+    /**
+     * @return The file the trace of the current session is written to, or null when tracing is off
+     */
+    public File getTraceFile()
+    {
+        return traceFile;
+    }
+
+    /**
+     * Record a span of the current thread which started at the given time and ends now
+     * 
+     * @param name The name of the span
+     * @param category The category of the span, which the viewers can filter by
+     * @param startNanos The value of System.nanoTime() when the span started
+     * @param args Pairs of argument names and values shown with the span
+     */
+    public void record( String name, String category, long startNanos, String... args )
+    {
+        if ( traceFile == null )
+        {
+            return;
+        }
+
+        long endNanos = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        Long threadId = thread.getId();
+        if ( !threadNames.containsKey( threadId ) )
+        {
+            threadNames.put( threadId, thread.getName() );
+        }
+        spans.add( new Span( name, category, startNanos, endNanos - startNanos, threadId, args ) );
+    }
+
+    /**
+     * Write the spans recorded so far to the trace file, as a JSON object with the traceEvents of Chrome, ex:
+     * {"traceEvents":[{"name":"resolvePom","cat":"remote","ph":"X","ts":12.5,"dur":3.0,"pid":1,"tid":1}]}
+     * 
+     * @throws IOException If the file can't be written
+     */
+    public void writeJson()
+        throws IOException
+    {
+        File file = traceFile;
+        if ( file == null )
+        {
+            return;
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if ( directory != null )
+        {
+            directory.mkdirs();
+        }
+        Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+        try
+        {
+            writer.write( "{\"displayTimeUnit\":\"ms\",\"traceEvents\":[" );
+            String separator = "\n";
+            for ( Entry<Long, String> threadName : threadNames.entrySet() )
+            {
+                writer.write( separator + "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+                    + threadName.getKey() + ",\"args\":{\"name\":" + ExtensionMetrics.quote( threadName.getValue() )
+                    + "}}" );
+                separator = ",\n";
+            }
+            for ( Span span : spans )
+            {
+                writer.write( separator );
+                span.write( writer, epochNanos );
+                separator = ",\n";
+            }
+            writer.write( "\n]}\n" );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * A complete event of the trace, with its start and duration
+     */
+    private static class Span
+    {
+        private final String name;
+
+        private final String category;
+
+        private final long startNanos;
+
+        private final long durationNanos;
+
+        private final long threadId;
+
+        private final String[] args;
+
+        Span( String name, String category, long startNanos, long durationNanos, long threadId, String[] args )
+        {
+            this.name = name;
+            this.category = category;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.threadId = threadId;
+            this.args = args;
+        }
+
+        /**
+         * Write the span as a trace event, with its times in microseconds since the start of the trace
+         */
+        void write( Writer writer, long epochNanos )
+            throws IOException
+        {
+            writer.write( "{\"name\":" + ExtensionMetrics.quote( name ) + ",\"cat\":"
+                + ExtensionMetrics.quote( category ) + ",\"ph\":\"X\",\"ts\":" + ( startNanos - epochNanos ) / 1000.0
+                + ",\"dur\":" + durationNanos / 1000.0 + ",\"pid\":1,\"tid\":" + threadId );
+            if ( args.length > 1 )
+            {
+                writer.write( ",\"args\":{" );
+                for ( int i = 0; i + 1 < args.length; i += 2 )
+                {
+                    writer.write( ( i > 0 ? "," : "" ) + ExtensionMetrics.quote( args[i] ) + ":"
+                        + ExtensionMetrics.quote( args[i + 1] ) );
+                }
+                writer.write( "}" );
+            }
+            writer.write( "}" );
+        }
+    }
+}